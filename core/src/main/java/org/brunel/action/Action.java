@@ -21,6 +21,7 @@ import org.brunel.model.VisComposition;
 import org.brunel.model.VisException;
 import org.brunel.model.VisItem;
 import org.brunel.model.VisElement;
+import org.brunel.util.BoundedCache;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -36,9 +37,16 @@ import java.util.List;
  * were the input.
  * In fact the chain <code>String canonical = Action.parse(text).simplify().toString()</code> is an
  * easy way to parse and "regularize" an input text.
+ *
+ * Because actions are immutable, parsed actions are kept and shared between calls with the same text.
+ * The number kept can be set with the system property "brunel.action.cacheSize".
  */
 public class Action implements Comparable<Action> {
 
+    // Parsed actions, by source text
+    private static final BoundedCache<String, Action> PARSED
+            = new BoundedCache<>(Integer.getInteger("brunel.action.cacheSize", 500));
+
     /**
      * Parses the text and returns an action for it; throws an error if syntactically incorrect
      *
@@ -47,7 +55,18 @@ public class Action implements Comparable<Action> {
      * @throws VisException wraps any error in parsing
      */
     public static Action parse(String text) {
-        return Parser.parse(text);
+        if (text == null) return Parser.parse(null);
+        Action action = PARSED.get(text);
+        return action != null ? action : PARSED.put(text, Parser.parse(text));
+    }
+
+    /**
+     * The actions that have been parsed, by source text. This can be used to monitor hits and misses
+     *
+     * @return the cache of parsed actions
+     */
+    public static BoundedCache<String, Action> getParsedCache() {
+        return PARSED;
     }
 
     /* The sequence of action commands */
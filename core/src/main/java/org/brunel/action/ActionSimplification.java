@@ -98,9 +98,14 @@ class ActionSimplification {
 
     private void sortMultiOptions(ArrayList<ActionStep> base) {
         // Any step  that allows multiple parameters can have those parameters sorted
-        for (ActionStep step: base) {
-            if (grammar.get(step.name).mayHaveMultipleOptions())
-                Arrays.sort(step.parameters);
+        // The steps may be shared, so sort copies of the parameters
+        for (int i = 0; i < base.size(); i++) {
+            ActionStep step = base.get(i);
+            if (grammar.get(step.name).mayHaveMultipleOptions()) {
+                Param[] sorted = step.parameters.clone();
+                Arrays.sort(sorted);
+                base.set(i, ActionUtil.replaceParameters(step, sorted));
+            }
         }
     }
 
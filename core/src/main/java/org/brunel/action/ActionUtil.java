@@ -54,12 +54,16 @@ public class ActionUtil {
      * @return The Brunel with the prefix for all data() statements.
      */
     public static String prefixAllDataStatements(Action action, String prefix) {
-        for (ActionStep step : action.steps) {
-        	if (step.name.equals("data")) {
-        		step.parameters[0] = Param.makeString(prefix + step.parameters[0].asString());
+        // Parsed actions are shared, so build new steps rather than changing them
+        ActionStep[] steps = action.steps.clone();
+        for (int i = 0; i < steps.length; i++) {
+        	if (steps[i].name.equals("data")) {
+        		Param[] parameters = steps[i].parameters.clone();
+        		parameters[0] = Param.makeString(prefix + parameters[0].asString());
+        		steps[i] = new ActionStep(steps[i].name, parameters);
         	}
         }
-        return action.toString();
+        return new Action(steps).toString();
 
     }
 
@@ -116,20 +120,21 @@ public class ActionUtil {
      * is repeated.
      * @param action the original action
      * @param newData a parameter specifying the replacement data
-     * @return the action with all data() parameters replaced.
+     * @return a new action with all data() parameters replaced.
      */
     public static Action replaceDataParameters(Action action, Param... newData) {
 
     	int dataIndex = 0;
 
-    	for (int i=0; i < action.steps.length; i++) {
-    		if (action.steps[i].name.equals("data")) {
-    			action.steps[i] = replaceParameters(action.steps[i], new Param[]{newData[dataIndex]});
+    	ActionStep[] steps = action.steps.clone();
+    	for (int i=0; i < steps.length; i++) {
+    		if (steps[i].name.equals("data")) {
+    			steps[i] = replaceParameters(steps[i], new Param[]{newData[dataIndex]});
     			dataIndex = Math.min(dataIndex+1, newData.length-1);
     		}
     	}
 
-    	return action;
+    	return new Action(steps);
 
     }
 
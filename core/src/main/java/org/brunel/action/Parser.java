@@ -32,6 +32,9 @@ import java.util.Stack;
 
 public class Parser {
 
+	private static final String SPECIAL_CHARS = ",()[]:";
+	private static final String[] SPECIAL_TOKENS = {",", "(", ")", "[", "]", ":"};
+
 	public static Action parse(String text) {
 		Parser parse = new Parser();
 		List<BrunelToken> tokens = parse.tokenize(text);
@@ -85,6 +88,7 @@ public class Parser {
 	}
 
 	private static List<Param> tryAsDashSeparatedList(String content) {
+		if (content.indexOf('-') < 0) return null;       // Avoid splitting when there is nothing to split
 		String[] parts = content.split("-");
 		if (parts.length < 2) return null;               // Need multiples for this
 		List<Param> list = new ArrayList<>();
@@ -113,18 +117,33 @@ public class Parser {
 
 	public List<BrunelToken> tokenize(String text) {
 		try {
-			ArrayList<BrunelToken> list = new ArrayList<>();
-			int runStart = 0;
-			while (runStart < text.length()) {
-				char c = text.charAt(runStart);
-				// Do not care about runs of whitespace
+			int n = text.length();
+			ArrayList<BrunelToken> list = new ArrayList<>(n / 4 + 1);
+			int at = 0;
+			while (at < n) {
+				char c = text.charAt(at);
 				if (Character.isWhitespace(c)) {
-					runStart++;
-					continue;
+					// Do not care about runs of whitespace
+					at++;
+				} else if (isSpecialChar(c)) {
+					// Single character tokens share their content
+					list.add(new BrunelToken(at, at + 1, SPECIAL_TOKENS[SPECIAL_CHARS.indexOf(c)]));
+					at++;
+				} else {
+					int start = at;
+					if (isQuote(c)) {
+						at = findQuoteEnd(text, start, c);
+					} else {
+						// A run ends at whitespace, a special character or a quote
+						at++;
+						while (at < n) {
+							char d = text.charAt(at);
+							if (isSpecialChar(d) || isQuote(d) || Character.isWhitespace(d)) break;
+							at++;
+						}
+					}
+					list.add(new BrunelToken(text, start, at));
 				}
-				int runEnd = findRunEnd(text, runStart, c);
-				list.add(new BrunelToken(text, runStart, runEnd));
-				runStart = runEnd;
 			}
 			return list;
 		} catch (Exception e) {
@@ -288,19 +307,7 @@ public class Parser {
 		throw new IllegalStateException("Unterminated parameters list");
 	}
 
-	private int findRunEnd(String text, int start, char startChar) {
-		if (isQuote(startChar)) return findQuoteEnd(text, start, startChar);
-		if (isSpecialChar(startChar)) return start + 1;
-		int end = start + 1;
-		while (end < text.length()) {
-			char c = text.charAt(end);
-			if (isSpecialChar(c) || Character.isWhitespace(c) || isQuote(c)) return end;
-			end++;
-		}
-		return end;
-	}
-
-	private boolean isSpecialChar(char startChar) {
+	private static boolean isSpecialChar(char startChar) {
 		return startChar == ',' || startChar == '(' || startChar == ')'
 				|| startChar == '[' || startChar == ']' || startChar == ':';
 	}
@@ -362,9 +369,13 @@ public class Parser {
 
 		/* Create a token and give it the 'error' type initially */
 		public BrunelToken(String all, int start, int end) {
+			this(start, end, all.substring(start, end));
+		}
+
+		private BrunelToken(int start, int end, String content) {
 			this.start = start;
 			this.end = end;
-			this.content = all.substring(start, end);
+			this.content = content;
 			this.parsedType = "?";
 		}
 
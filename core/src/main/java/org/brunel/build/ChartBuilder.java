@@ -51,7 +51,7 @@ public class ChartBuilder {
     // Assemble the elements and data
     TransformedData[] data = new TransformedData[elements.length];
     for (int i = 0; i < elements.length; i++) {
-      data[i] = TransformedData.make(elements[i]);
+      data[i] = TransformedData.make(elements[i], visInfo.transforms);
     }
 
     // If this is nested, it can only be one element
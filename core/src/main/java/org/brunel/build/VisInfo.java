@@ -1,6 +1,7 @@
 package org.brunel.build;
 
 import org.brunel.build.controls.Controls;
+import org.brunel.build.data.TransformMemo;
 import org.brunel.build.info.ElementStructure;
 import org.brunel.build.util.BuilderOptions;
 import org.brunel.model.VisElement;
@@ -18,6 +19,7 @@ class VisInfo {
 	final Set<ElementStructure> allElements;          // Collection of all elements used
 	Controls controls;                          // Contains the controls for the current chart
 	StyleSheet visStyles;                                // Custom styles for this vis
+	final TransformMemo transforms;                      // Transformed data shared by elements
 
 	VisInfo(int width, int height, BuilderOptions options) {
 		this.width = width;
@@ -25,6 +27,7 @@ class VisInfo {
 		allElements = new LinkedHashSet<>();
 		controls = new Controls(options);
 		visStyles = new StyleSheet();
+		transforms = new TransformMemo();
 	}
 
   public ElementStructure findElement(VisElement target) {
@@ -28,6 +28,8 @@ import org.brunel.model.VisElement;
 import org.brunel.model.VisItem;
 import org.brunel.model.VisTypes;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -93,6 +95,26 @@ public class VisualizationBuilder {
    * @param height pixel height of the rectangle into which the visualization is to be put
    */
   public final void build(VisItem main, int width, int height) {
+    buildScript(main, width, height, null);
+  }
+
+  /**
+   * Builds a visualization, streaming the script to the target as it is generated rather than
+   * collecting it in memory. Large data tables never need to exist as a single String.
+   * After this call, {@link #getVisualization()} will return null. The target is flushed, but not closed.
+   *
+   * @param main   the description of the visualization to build
+   * @param width  pixel width of the rectangle into which the visualization is to be put
+   * @param height pixel height of the rectangle into which the visualization is to be put
+   * @param target where to write the script
+   * @throws IOException if the script could not be written to the target
+   */
+  public final void build(VisItem main, int width, int height, Writer target) throws IOException {
+    buildScript(main, width, height, target);
+    if (out.checkError()) throw new IOException("Failed to write visualization script");
+  }
+
+  private void buildScript(VisItem main, int width, int height, Writer target) {
     // Define defaults and ensure everything is good to go.
     // Do this before anything else
     main = main.makeCanonical();
@@ -105,7 +127,7 @@ public class VisualizationBuilder {
     for (int i = 0; i < datasets.length; i++) datasets[i].set("index", i);
 
     // Create the main visualization area
-    writeStart();
+    writeStart(target);
 
     Map<VisItem, double[]> locations = new LinkedHashMap<>();     // Where to place items
     VisItem[] parts = main.children();                            // The parts contained in this item
@@ -165,6 +187,11 @@ public class VisualizationBuilder {
     return visStructure.visStyles.toString("#" + options.visIdentifier + ".brunel");
   }
 
+  /**
+   * The script for the built visualization
+   *
+   * @return the script, or null if it was streamed to a target
+   */
   public String getVisualization() {
     return out.content();
   }
@@ -371,8 +398,8 @@ public class VisualizationBuilder {
 
   }
 
-  private void writeStart() {
-    this.out = new ScriptWriter(options);
+  private void writeStart(Writer target) {
+    this.out = new ScriptWriter(options, target);
 
     // Write the class definition function (and flag to use strict mode)
     out.add("function ", options.className, "(visId) {").ln().indentMore();
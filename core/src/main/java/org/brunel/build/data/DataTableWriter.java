@@ -18,6 +18,7 @@ package org.brunel.build.data;
 
 import org.brunel.build.info.ElementStructure;
 import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataEncoding;
 import org.brunel.build.util.BuilderOptions.DataMethod;
 import org.brunel.build.util.ScriptWriter;
 import org.brunel.data.Data;
@@ -28,14 +29,15 @@ import org.brunel.data.util.DateFormat;
 import org.brunel.data.util.Range;
 import org.brunel.model.VisItem;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.TimeZone;
 
 import static org.brunel.data.util.DateFormat.YearMonthDay;
 
@@ -49,17 +51,14 @@ public class DataTableWriter {
 	private final ScriptWriter out;
 	private final BuilderOptions options;
 
-	private final SimpleDateFormat dateFormatter, dateTimeFormatter;
+	private final ValueFormatter formatter;
 
 	public DataTableWriter(VisItem main, Set<ElementStructure> elements, ScriptWriter out, BuilderOptions options) {
 		this.main = main;
 		this.elements = elements;
 		this.out = out;
 		this.options = options;
-		dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
-		dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
-		dateTimeFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
-		dateTimeFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+		formatter = new ValueFormatter();
 	}
 
 	public void write() {
@@ -102,30 +101,6 @@ public class DataTableWriter {
 		}
 	}
 
-	private void appendValue(StringBuilder row, Field field, Object value) {
-		if (value == null) {
-			row.append("null");
-		} else if (value instanceof Range) {
-			Range range = (Range) value;
-			row.append('[');
-			appendValue(row, field, range.low);
-			row.append(',');
-			appendValue(row, field, range.high);
-			row.append(']');
-		} else if (field.isDate()) {
-			DateFormat df = (DateFormat) field.property("dateFormat");
-			String d = df.ordinal() >= YearMonthDay.ordinal()
-					? dateFormatter.format(Data.asDate(value))
-					: dateTimeFormatter.format(Data.asDate(value));
-			row.append(Data.quote(d));
-		} else if (field.isNumeric()) {
-			Double d = Data.asNumeric(value);
-			if (d == null) row.append("null");
-			else row.append(d.toString());
-		} else
-			row.append(Data.quote(value.toString()));
-	}
-
 	private Set<Field> findUsed(Dataset dataset) {
 		Set<Field> result = new LinkedHashSet<>();
 		for (ElementStructure e : elements) {
@@ -141,18 +116,17 @@ public class DataTableWriter {
 		return result;
 	}
 
-	// If the row contains any nulls, return null for the whole row
-	private String makeRowText(Field[] fields, int r) {
-		StringBuilder row = new StringBuilder();
+	// Writes the row text into the builder, replacing any previous content
+	private void makeRowText(StringBuilder row, Field[] fields, int r) {
+		row.setLength(0);
 		row.append("[");
 		for (int i = 0; i < fields.length; i++) {
 			Field field = fields[i];
 			if (i > 0) row.append(", ");
 			Object value = field.value(r);
-			appendValue(row, field, value);
+			formatter.append(row, field, value);
 		}
 		row.append("]");
-		return row.toString();
 	}
 
 	private List<Field> stripSynthetic(Collection<Field> fields) {
@@ -199,18 +173,130 @@ public class DataTableWriter {
 		}
 		out.add("], ");
 
+		if (options.dataEncoding == DataEncoding.columnar) {
+			writeColumns(fields);
+			return;
+		}
+
 		out.onNewLine().add(" rows: [");
 
+		// A single builder is re-used for every row, and its text written directly to the output
+		StringBuilder rowText = new StringBuilder();
 		for (int r = 0; r < fields[0].rowCount(); r++) {
 			if (r > 0) out.add(",");
-			String rowText = makeRowText(fields, r);
+			makeRowText(rowText, fields, r);
 			if (out.currentColumn() + rowText.length() > 99)
 				out.onNewLine();
 			else if (r > 0)
 				out.add(" ");
-			out.add(rowText);
+			out.addText(rowText);
 		}
 		out.add("]");
 		out.indentLess().onNewLine().add("}").endStatement();
 	}
+
+	/*
+	 * Writes the data one column at a time. Category columns are written as a dictionary of the unique values
+	 * and an index into it for each row. Whole numbers and dates (as epoch milliseconds, truncated to the precision
+	 * the row format would use) are written as the difference from the previous non-null value.
+	 * Other columns are written value by value, as for rows.
+	 */
+	private void writeColumns(Field[] fields) {
+		int n = fields[0].rowCount();
+		out.onNewLine().add(" count: " + n + ",");
+		out.onNewLine().add(" columns: [").indentMore();
+
+		StringBuilder item = new StringBuilder();
+		for (int k = 0; k < fields.length; k++) {
+			Field field = fields[k];
+			if (k > 0) out.add(",");
+			out.onNewLine();
+			long[] whole = wholeValues(field, n);
+			if (whole != null) {
+				out.add("{").add(field.isDate() ? "date: true, delta: [" : "delta: [");
+				Long last = null;
+				for (int r = 0; r < n; r++) {
+					item.setLength(0);
+					if (whole[r] == Long.MIN_VALUE) {
+						item.append("null");
+					} else {
+						item.append(last == null ? whole[r] : whole[r] - last);
+						last = whole[r];
+					}
+					writeItem(item, r);
+				}
+				out.add("]}");
+			} else if (!field.isNumeric() && !field.isDate() && !(field.value(0) instanceof Range)
+					&& field.uniqueValuesCount() < n) {
+				Map<String, Integer> codes = new HashMap<>();
+				out.add("{dict: [");
+				for (int r = 0; r < n; r++) {
+					Object v = field.value(r);
+					if (v == null || codes.containsKey(v.toString())) continue;
+					item.setLength(0);
+					formatter.appendQuoted(item, v.toString());
+					writeItem(item, codes.size());
+					codes.put(v.toString(), codes.size());
+				}
+				out.add("],").onNewLine().add(" codes: [");
+				for (int r = 0; r < n; r++) {
+					Object v = field.value(r);
+					item.setLength(0);
+					item.append(v == null ? -1 : codes.get(v.toString()));
+					writeItem(item, r);
+				}
+				out.add("]}");
+			} else {
+				out.add("{values: [");
+				for (int r = 0; r < n; r++) {
+					item.setLength(0);
+					formatter.append(item, field, field.value(r));
+					writeItem(item, r);
+				}
+				out.add("]}");
+			}
+		}
+		out.add("]");
+		out.indentLess().indentLess().onNewLine().add("}").endStatement();
+	}
+
+	// Writes an item of a list, wrapping the line when it would get too long
+	private void writeItem(StringBuilder item, int index) {
+		if (index > 0) out.add(",");
+		if (out.currentColumn() + item.length() > 99)
+			out.onNewLine();
+		else if (index > 0)
+			out.add(" ");
+		out.addText(item);
+	}
+
+	// Returns the values as whole numbers (Long.MIN_VALUE for null), or null if they cannot all be represented that way
+	private long[] wholeValues(Field field, int n) {
+		if (!field.isNumeric() || n == 0 || field.value(0) instanceof Range) return null;
+		boolean dateOnly = field.isDate() && ((DateFormat) field.property("dateFormat")).ordinal() >= YearMonthDay.ordinal();
+		long[] result = new long[n];
+		for (int r = 0; r < n; r++) {
+			Object value = field.value(r);
+			if (field.isDate()) {
+				Date date = Data.asDate(value);
+				if (date == null) {
+					result[r] = Long.MIN_VALUE;
+				} else {
+					// Match the precision of the formatted dates: whole days or whole seconds
+					long unit = dateOnly ? (long) Data.MILLIS_PER_DAY : 1000;
+					long t = date.getTime();
+					result[r] = t - ((t % unit) + unit) % unit;
+				}
+			} else {
+				Double d = Data.asNumeric(value);
+				if (d == null) result[r] = Long.MIN_VALUE;
+				else if (d != Math.rint(d) || Math.abs(d) > MAX_WHOLE) return null;
+				else result[r] = d.longValue();
+			}
+		}
+		return result;
+	}
+
+	// Whole numbers beyond this might lose precision in Javascript when the differences are added up
+	private static final double MAX_WHOLE = 1L << 52;
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.build.data;
+
+import org.brunel.data.Dataset;
+import org.brunel.util.BoundedCache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the results of transforms during a build so elements that transform the same data in the same way
+ * share the work. Results are stored after every step of a plan, so a plan that starts the same way as an
+ * earlier one (the same filter and summary, but a different sort, say) carries on from the shared part.
+ *
+ * Results are keyed by the identity of the source data, so a new or reloaded data set never matches.
+ * Optionally, results can also be shared between builds; this is off unless the system property
+ * "brunel.transform.cacheSize" gives the number of results to keep, or useSharedCache is called.
+ */
+public class TransformMemo {
+
+	private static volatile BoundedCache<Key, Dataset> shared;
+
+	static {
+		useSharedCache(Integer.getInteger("brunel.transform.cacheSize", 0));
+	}
+
+	/**
+	 * Sets the number of transform results shared between builds
+	 *
+	 * @param maxEntries maximum number of results; zero or less turns sharing off
+	 */
+	public static void useSharedCache(int maxEntries) {
+		shared = maxEntries > 0 ? new BoundedCache<Key, Dataset>(maxEntries) : null;
+	}
+
+	/**
+	 * The results shared between builds
+	 *
+	 * @return the cache, or null when results are not shared
+	 */
+	public static BoundedCache<?, Dataset> getSharedCache() {
+		return shared;
+	}
+
+	private final Map<Key, Dataset> results = new HashMap<>();
+	private int hits, misses;
+
+	Dataset get(Dataset source, String steps) {
+		Key key = new Key(source, steps);
+		Dataset result = results.get(key);
+		if (result == null) {
+			BoundedCache<Key, Dataset> cache = shared;
+			if (cache != null && (result = cache.get(key)) != null) results.put(key, result);
+		}
+		if (result == null) misses++;
+		else hits++;
+		return result;
+	}
+
+	void put(Dataset source, String steps, Dataset result) {
+		Key key = new Key(source, steps);
+		results.put(key, result);
+		BoundedCache<Key, Dataset> cache = shared;
+		if (cache != null) cache.put(key, result);
+	}
+
+	/**
+	 * @return number of lookups that found a stored result
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that did not find a stored result
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+	/*
+	 * Source data is compared by identity, as data sets do not define equality
+	 */
+	private static final class Key {
+		private final Dataset source;
+		private final String steps;
+
+		Key(Dataset source, String steps) {
+			this.source = source;
+			this.steps = steps;
+		}
+
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key other = (Key) o;
+			return source == other.source && steps.equals(other.steps);
+		}
+
+		public int hashCode() {
+			return 31 * System.identityHashCode(source) + steps.hashCode();
+		}
+	}
+}
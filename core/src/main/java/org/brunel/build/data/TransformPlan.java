@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.build.data;
+
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.modify.DataOperation;
+import org.brunel.data.modify.Filter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A logical plan for the chain of operations defined by a set of transform parameters.
+ * Building the plan drops the empty operations, prunes the data to the fields that are needed,
+ * moves filters ahead of 'each' where it does not change the result, and fuses a filter that feeds
+ * directly into a summary so only the rows and fields the summary reads are passed to it.
+ * Only the result of the final step is materialized; intermediate steps use re-ordered views of the data.
+ */
+class TransformPlan {
+
+	enum Op {
+		constants, each, filter, transform, summarize, filterSummarize, series, rowCount, sort, sortRows, stack
+	}
+
+	/**
+	 * Build the plan for the data
+	 *
+	 * @param source the data the plan will run on
+	 * @param params transform parameters
+	 * @return plan that gives the same results as applying the parameter commands in order
+	 */
+	static TransformPlan make(Dataset source, TransformParameters params) {
+		TransformPlan plan = new TransformPlan(neededFields(source, params), userTransforms(source));
+
+		// Filters which do not reference the split fields can run before 'each', on fewer rows
+		String[] pushed = splitFilters(source, params.filterCommand, params.eachCommand);
+		plan.add(Op.filter, pushed[0]);
+		plan.add(Op.constants, params.constantsCommand);
+		plan.add(Op.each, params.eachCommand);
+
+		// With no transform between them, the filter only defines which rows are summarized
+		if (params.transformCommand.isEmpty() && !pushed[1].isEmpty() && !params.summaryCommand.isEmpty()) {
+			plan.steps.add(new Step(Op.filterSummarize, pushed[1], params.summaryCommand));
+		} else {
+			plan.add(Op.filter, pushed[1]);
+			plan.add(Op.transform, params.transformCommand);
+			plan.add(Op.summarize, params.summaryCommand);
+		}
+
+		plan.add(Op.series, params.seriesCommand);
+		plan.add(Op.rowCount, params.rowCountCommand);
+		plan.add(Op.sort, params.sortCommand);
+		plan.add(Op.sortRows, params.sortRowsCommand);
+		plan.add(Op.stack, params.stackCommand);
+		return plan;
+	}
+
+	/*
+	 * The fields needed by the plan, or null if we cannot tell and so must keep them all.
+	 * The used command lists the fields the element refers to; filters and 'each' may refer to others
+	 */
+	private static Set<String> neededFields(Dataset source, TransformParameters params) {
+		if (params.usedCommand == null || params.usedCommand.isEmpty()) return null;
+		Set<String> names = new LinkedHashSet<>();
+		for (String s : DataOperation.strings(params.usedCommand, ';')) {
+			if (s.equals("#all")) return null;
+			names.add(s);
+		}
+		for (String s : DataOperation.strings(params.eachCommand, ';')) names.add(s);
+		for (String s : DataOperation.strings(params.filterCommand, ';')) names.add(filterField(s));
+
+		// Resolve to the canonical names
+		Set<String> result = new LinkedHashSet<>();
+		for (String s : names) {
+			Field f = source.field(s, true);
+			if (f != null) result.add(f.name);
+		}
+		return result;
+	}
+
+	/*
+	 * Transforms set on the source fields by the user change how binning works, so are part of the plan's identity
+	 */
+	private static String userTransforms(Dataset source) {
+		StringBuilder b = new StringBuilder();
+		for (Field f : source.fields) {
+			Object transform = f.property("transform");
+			if (transform != null) b.append(f.name).append(':').append(transform).append(';');
+		}
+		return b.toString();
+	}
+
+	/*
+	 * Splits the filter command into the clauses which can run before 'each' and those that must run after.
+	 * Ranked filters depend on the rows generated by 'each', and all the clauses of a command are evaluated
+	 * on the same rows, so if any clause is ranked none of them can move. Filters on constants must also
+	 * wait for the constant fields to be added
+	 */
+	private static String[] splitFilters(Dataset source, String filterCommand, String eachCommand) {
+		String[] eachFields = DataOperation.strings(eachCommand, ';');
+		String[] clauses = DataOperation.strings(filterCommand, ';');
+		if (eachFields.length == 0) return new String[]{"", filterCommand};
+		for (String s : clauses) if (s.contains("ranked")) return new String[]{"", filterCommand};
+		List<String> before = new ArrayList<>();
+		List<String> after = new ArrayList<>();
+		for (String s : clauses) {
+			String field = filterField(s);
+			boolean canMove = source.field(field) != null;
+			for (String e : eachFields) if (e.equals(field)) canMove = false;
+			if (canMove) before.add(s);
+			else after.add(s);
+		}
+		return new String[]{Data.join(before, "; "), Data.join(after, "; ")};
+	}
+
+	private static String filterField(String clause) {
+		int p = clause.indexOf(' ');
+		return p < 0 ? clause : clause.substring(0, p).trim();
+	}
+
+	final List<Step> steps = new ArrayList<>();
+	private final Set<String> neededFields;
+	private final String userTransforms;
+
+	private TransformPlan(Set<String> neededFields, String userTransforms) {
+		this.neededFields = neededFields;
+		this.userTransforms = userTransforms;
+	}
+
+	private void add(Op op, String command) {
+		if (!command.isEmpty()) steps.add(new Step(op, command, null));
+	}
+
+	/**
+	 * Run the plan
+	 *
+	 * @param data source data
+	 * @param memo results from previous plans to re-use, and to add to (may be null)
+	 * @return the transformed data
+	 */
+	Dataset execute(Dataset data, TransformMemo memo) {
+		if (memo == null) {
+			data = prune(data);
+			for (Step step : steps) data = step.apply(data);
+			return data;
+		}
+
+		// Start after the longest run of steps that has already been calculated
+		Dataset source = data;
+		String[] keys = new String[steps.size() + 1];
+		for (int i = 1; i < keys.length; i++) keys[i] = userTransforms + describe(i);
+		int done = steps.size();
+		Dataset result = null;
+		while (done > 0 && (result = memo.get(source, keys[done])) == null) done--;
+		if (result == null) result = prune(source);
+
+		for (int i = done; i < steps.size(); i++) {
+			result = steps.get(i).apply(result);
+			memo.put(source, keys[i + 1], result);
+		}
+		return result;
+	}
+
+	private Dataset prune(Dataset data) {
+		if (neededFields == null) return data;
+		List<Field> kept = new ArrayList<>();
+		for (Field f : data.fields)
+			if (f.name.startsWith("#") || neededFields.contains(f.name)) kept.add(f);
+		if (kept.size() == data.fields.length) return data;
+		return data.replaceFields(kept.toArray(new Field[kept.size()]));
+	}
+
+	public String toString() {
+		return describe(steps.size());
+	}
+
+	/* Describes the plan up to the given step */
+	private String describe(int stepCount) {
+		StringBuilder b = new StringBuilder();
+		if (neededFields != null) b.append("fields[").append(Data.join(neededFields, "; ")).append("]");
+		for (int i = 0; i < stepCount; i++) {
+			if (b.length() > 0) b.append(" -> ");
+			b.append(steps.get(i));
+		}
+		return b.toString();
+	}
+
+	static final class Step {
+		final Op op;
+		final String command;
+		final String summaryCommand;            // Only used when fusing filter and summarize
+
+		Step(Op op, String command, String summaryCommand) {
+			this.op = op;
+			this.command = command;
+			this.summaryCommand = summaryCommand;
+		}
+
+		Dataset apply(Dataset data) {
+			switch (op) {
+				case constants:
+					return data.addConstants(command);
+				case each:
+					return data.each(command);
+				case filter:
+					return data.filter(command);
+				case transform:
+					return data.transform(command);
+				case summarize:
+					return data.summarize(command);
+				case filterSummarize:
+					return filterAndSummarize(data);
+				case series:
+					return data.series(command);
+				case rowCount:
+					return data.setRowCount(command);
+				case sort:
+					return data.sort(command);
+				case sortRows:
+					return data.sortRows(command);
+				case stack:
+					return data.stack(command);
+				default:
+					throw new IllegalStateException("Unknown operation: " + op);
+			}
+		}
+
+		/*
+		 * The summary only reads its own input fields, so only those are restricted to the filtered rows
+		 */
+		private Dataset filterAndSummarize(Dataset data) {
+			int[] keep = Filter.rowsToKeep(data, command);
+			if (keep == null) return data.summarize(summaryCommand);
+			if (keep.length == 0 || Boolean.TRUE.equals(data.property("summarized")))
+				return data.retainRows(keep).summarize(summaryCommand);
+
+			Set<String> read = new LinkedHashSet<>();
+			read.add("#count");
+			read.add("#row");
+			read.add("#selection");
+			for (String[] op : DataOperation.map(summaryCommand))
+				read.add(op[1].split(":")[0].trim());
+
+			List<Field> fields = new ArrayList<>();
+			for (Field f : data.fields) if (read.contains(f.name)) fields.add(f);
+			return data.replaceFields(fields.toArray(new Field[fields.size()])).retainRows(keep).summarize(summaryCommand);
+		}
+
+		public String toString() {
+			return summaryCommand == null ? op + "[" + command + "]" : op + "[" + command + " | " + summaryCommand + "]";
+		}
+	}
+}
@@ -30,6 +30,17 @@ import java.util.List;
 public class TransformedData extends Dataset {
 
   public static TransformedData make(VisElement vis) {
+    return make(vis, null);
+  }
+
+  /**
+   * Transform the data for an element
+   *
+   * @param vis  the element
+   * @param memo transforms already calculated during this build, to re-use and add to (may be null)
+   * @return transformed data for the element
+   */
+  public static TransformedData make(VisElement vis, TransformMemo memo) {
     TransformParameters params = new TransformParameterBuilder(vis).make();
     Dataset source = vis.getDataset();
 
@@ -38,7 +49,8 @@ public class TransformedData extends Dataset {
     applyUserTransforms(source, vis.fX);
     applyUserTransforms(source, vis.fY);
 
-    return new TransformedData(source, params, transform(source, params));
+    Dataset result = TransformPlan.make(source, params).execute(source, memo);
+    return new TransformedData(source, params, result);
   }
 
   private static void applyUserTransforms(Dataset source, List<Param> axes) {
@@ -56,17 +68,9 @@ public class TransformedData extends Dataset {
   }
 
   public static Dataset transform(Dataset data, TransformParameters params) {
-    return data
-      .addConstants(params.constantsCommand)                              // add constant fields
-      .each(params.eachCommand)                                           // divide up fields into parts
-      .filter(params.filterCommand)                                       // filter data
-      .transform(params.transformCommand)                                 // bin, rank, ... on data
-      .summarize(params.summaryCommand)                                   // summarize data
-      .series(params.seriesCommand)                                       // convert series
-      .setRowCount(params.rowCountCommand)                                // set the number of rows
-      .sort(params.sortCommand)                                           // sort data
-      .sortRows(params.sortRowsCommand)                                   // sort rows only
-      .stack(params.stackCommand);                                        // stack data
+    // The plan runs constants, each, filter, transform, summarize, series, setRowCount, sort, sortRows
+    // and stack, in that order, but only on the fields and rows needed
+    return TransformPlan.make(data, params).execute(data, null);
   }
 
   private final Dataset source;                            // Original dataset the transform was applied to
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.data;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.util.DateFormat;
+import org.brunel.data.util.Range;
+
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.brunel.data.util.DateFormat.YearMonthDay;
+
+/**
+ * Formats data values as Javascript literals, writing directly into a builder.
+ * The output is identical to using Double.toString, Data.quote and the date formats, but
+ * dates are only formatted once for each distinct value in a column, and strings are escaped
+ * without building intermediate Strings.
+ * An instance is not thread-safe; each writer should use its own.
+ */
+final class ValueFormatter {
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final SimpleDateFormat dateFormatter, dateTimeFormatter;
+	private final Map<Field, Map<Object, String>> formattedDates = new IdentityHashMap<>();
+
+	ValueFormatter() {
+		dateFormatter = new SimpleDateFormat("yyyy-MM-dd");
+		dateFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+		dateTimeFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+		dateTimeFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
+
+	/**
+	 * Appends a value of a field in the form used for data tables
+	 *
+	 * @param b     target
+	 * @param field the field the value belongs to; it determines the type
+	 * @param value the value (possibly null, or a range)
+	 */
+	void append(StringBuilder b, Field field, Object value) {
+		if (value == null) {
+			b.append("null");
+		} else if (value instanceof Range) {
+			Range range = (Range) value;
+			b.append('[');
+			append(b, field, range.low);
+			b.append(',');
+			append(b, field, range.high);
+			b.append(']');
+		} else if (field.isDate()) {
+			appendQuoted(b, formatDate(field, value));
+		} else if (field.isNumeric()) {
+			Double d = Data.asNumeric(value);
+			if (d == null) b.append("null");
+			else appendNumber(b, d);
+		} else
+			appendQuoted(b, value.toString());
+	}
+
+	/**
+	 * Appends a number exactly as Double.toString would write it
+	 *
+	 * @param b target
+	 * @param d value to write
+	 */
+	void appendNumber(StringBuilder b, double d) {
+		// Whole numbers in this range are written as the integer followed by '.0'
+		if (d != 0 && d == (long) d && d > -1e7 && d < 1e7)
+			b.append((long) d).append(".0");
+		else
+			b.append(d);
+	}
+
+	/**
+	 * Appends a string as a quoted Javascript literal, exactly as Data.quote would
+	 *
+	 * @param b target
+	 * @param s string to quote
+	 */
+	void appendQuoted(StringBuilder b, String s) {
+		if (s == null) {
+			b.append("null");
+			return;
+		}
+		char quoteChar = s.indexOf('\'') >= 0 ? '"' : '\'';
+		b.append(quoteChar);
+		int n = s.length();
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			if (c == '\n') {
+				b.append("\\n");
+			} else if (c == '\r') {
+				b.append(' ');
+			} else if (c == '\t') {
+				b.append("\\t");
+			} else if (c == '\\') {
+				b.append("\\\\");
+			} else if (c == quoteChar) {
+				b.append('\\').append(c);
+			} else if (c >= '\u00ff') {
+				b.append("\\u").append(HEX[c >> 12 & 15]).append(HEX[c >> 8 & 15]).append(HEX[c >> 4 & 15]).append(HEX[c & 15]);
+			} else {
+				b.append(c);
+			}
+		}
+		b.append(quoteChar);
+	}
+
+	// Formats a date value, re-using the result for repeated values in the same field
+	private String formatDate(Field field, Object value) {
+		Map<Object, String> formatted = formattedDates.get(field);
+		if (formatted == null) {
+			formatted = new HashMap<>();
+			formattedDates.put(field, formatted);
+		}
+		String result = formatted.get(value);
+		if (result == null) {
+			DateFormat df = (DateFormat) field.property("dateFormat");
+			result = df.ordinal() >= YearMonthDay.ordinal()
+					? dateFormatter.format(Data.asDate(value))
+					: dateTimeFormatter.format(Data.asDate(value));
+			formatted.put(value, result);
+		}
+		return result;
+	}
+}
@@ -16,6 +16,8 @@
 
 package org.brunel.build.util;
 
+import java.util.Arrays;
+
 /**
  * Options that can be set for a builder
  */
@@ -51,6 +53,7 @@ public class BuilderOptions {
 			else if (keyVal[0].trim().equalsIgnoreCase("locMaps")) options.locMaps = keyVal[1].trim();
 			else if (keyVal[0].trim().equalsIgnoreCase("locD3")) options.locD3 = keyVal[1].trim();
 			else if (keyVal[0].trim().equalsIgnoreCase("locTopoJson")) options.locTopoJson = keyVal[1].trim();
+			else if (keyVal[0].trim().equalsIgnoreCase("dataEncoding")) options.dataEncoding = DataEncoding.valueOf(keyVal[1].trim());
 		}
 
 		return options;
@@ -66,6 +69,7 @@ public class BuilderOptions {
 	public String dataName = "table%d";                         // Pattern for the data table ID. %d is the index.
 	public String className = "BrunelVis";                      // Name of the base function
 	public DataMethod includeData = DataMethod.minimal;         // What level of data to include
+	public DataEncoding dataEncoding = DataEncoding.rows;       // How the included data is written
 	public boolean generateBuildCode = true;                    // if true, Add javascript to build the chart initially
 	public boolean readableJavascript = true;                   // Readable or shorter
 	public boolean accessibleContent = false;                   // If true, generate accessible content
@@ -75,6 +79,23 @@ public class BuilderOptions {
 	public String locTopoJson = "//cdnjs.cloudflare.com/ajax/libs/topojson/1.6.20/topojson.min";  //Location of D3's TopoJson support in require friendly pattern
 	public String version = "2.6";                              // Which online version to use
 
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof BuilderOptions)) return false;
+		BuilderOptions that = (BuilderOptions) o;
+		return Arrays.equals(values(), that.values());
+	}
+
+	public int hashCode() {
+		return Arrays.hashCode(values());
+	}
+
+	// All the option values, for comparison
+	private Object[] values() {
+		return new Object[]{visIdentifier, visObject, controlsIdentifier, dataName, className, includeData, dataEncoding,
+				generateBuildCode, readableJavascript, accessibleContent, locJavaScript, locMaps, locD3, locTopoJson, version};
+	}
+
 	/**
 	 * none -  no data described
 	 * full - send full data set
@@ -85,4 +106,13 @@ public class BuilderOptions {
 		none, full, columns, minimal
 	}
 
+	/**
+	 * rows - an array of rows, each value written in full
+	 * columnar - one entry per column; categories are written once and referenced by index,
+	 * whole numbers and dates (as epoch milliseconds) are written as differences from the previous value
+	 */
+	public enum DataEncoding {
+		rows, columnar
+	}
+
 }
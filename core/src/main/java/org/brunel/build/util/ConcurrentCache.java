@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.build.util;
+
+import org.brunel.data.Dataset;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe cache of Datasets with least-recently-used eviction, bounded by the estimated memory
+ * of the stored data. Entries may also be given a time to live.
+ * Keys are spread over independently locked stripes, each of which keeps its entries in access order;
+ * when the cache is too large the least recently used entry across all stripes is removed.
+ * Counts of hits, misses and evictions are kept for monitoring.
+ */
+public class ConcurrentCache implements DatasetCache {
+
+	/* Default maximum amount of memory to allow in cache in bytes */
+	public static final long DEFAULT_MAX_MEMORY = 512 * 1024 * 1024;
+
+	private static final int STRIPES = 16;
+
+	private final Stripe[] stripes = new Stripe[STRIPES];
+	private final AtomicLong estimatedMemoryUse = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong stores = new AtomicLong();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+
+	private volatile long maxMemory;
+	private volatile long timeToLive;                               // in milliseconds; zero for no limit
+
+	/**
+	 * Creates a cache with the default memory limit and no time limit on entries
+	 */
+	public ConcurrentCache() {
+		this(DEFAULT_MAX_MEMORY, 0);
+	}
+
+	/**
+	 * Creates a cache
+	 *
+	 * @param maxMemory  maximum estimated size in bytes of all the stored data
+	 * @param timeToLive default time in milliseconds that entries are kept; zero or less to keep until evicted
+	 */
+	public ConcurrentCache(long maxMemory, long timeToLive) {
+		this.maxMemory = maxMemory;
+		this.timeToLive = timeToLive;
+		for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+	}
+
+	@Override
+	public Dataset retrieve(String key) {
+		Stripe stripe = stripeFor(key);
+		Entry entry;
+		boolean expired = false;
+		stripe.lock.lock();
+		try {
+			entry = stripe.map.get(key);
+			if (entry != null && entry.expired(System.nanoTime())) {
+				stripe.map.remove(key);
+				expired = true;
+			} else if (entry != null) {
+				entry.lastAccess = System.nanoTime();
+			}
+		} finally {
+			stripe.lock.unlock();
+		}
+		if (expired) {
+			removed(entry, true);
+			entry = null;
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.dataset;
+	}
+
+	/**
+	 * The version of the entry stored for a key. Every store gives its entry a new version, so a dataset
+	 * read again after it expired or was evicted has a different version from the one it replaces.
+	 * Unlike {@link #retrieve(String)}, this does not count as a hit or miss.
+	 *
+	 * @param key unique key
+	 * @return the version, or zero if there is no live entry for the key
+	 */
+	public long version(String key) {
+		Stripe stripe = stripeFor(key);
+		stripe.lock.lock();
+		try {
+			Entry entry = stripe.map.get(key);
+			return entry == null || entry.expired(System.nanoTime()) ? 0 : entry.version;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	@Override
+	public void store(String key, Dataset dataset) {
+		store(key, dataset, timeToLive);
+	}
+
+	/**
+	 * Store a given data set using the given key, to be kept for a limited time
+	 *
+	 * @param key        unique key
+	 * @param dataset    the Dataset instance to store in the cache
+	 * @param timeToLive time in milliseconds to keep the data; zero or less to keep until evicted
+	 */
+	public void store(String key, Dataset dataset, long timeToLive) {
+		long now = System.nanoTime();
+		Entry entry = new Entry(key, dataset, stores.incrementAndGet(), now,
+				timeToLive > 0 ? now + TimeUnit.MILLISECONDS.toNanos(timeToLive) : 0);
+		Stripe stripe = stripeFor(key);
+		Entry previous;
+		stripe.lock.lock();
+		try {
+			previous = stripe.map.put(key, entry);
+		} finally {
+			stripe.lock.unlock();
+		}
+		if (previous != null) removed(previous, false);
+		estimatedMemoryUse.addAndGet(entry.size);
+		evictIfNeeded(key);
+	}
+
+	@Override
+	public void remove(String key) {
+		Stripe stripe = stripeFor(key);
+		Entry previous;
+		stripe.lock.lock();
+		try {
+			previous = stripe.map.remove(key);
+		} finally {
+			stripe.lock.unlock();
+		}
+		if (previous != null) removed(previous, false);
+	}
+
+	public long getMaxMemory() {
+		return maxMemory;
+	}
+
+	/**
+	 * Sets the maximum estimated size of the stored data, evicting entries if needed
+	 *
+	 * @param maxMemory size in bytes
+	 */
+	public void setMaxMemory(long maxMemory) {
+		this.maxMemory = maxMemory;
+		evictIfNeeded(null);
+	}
+
+	public long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Sets the time to keep entries stored from now on
+	 *
+	 * @param timeToLive time in milliseconds; zero or less to keep entries until evicted
+	 */
+	public void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+	}
+
+	public long getEstimatedMemoryUse() {
+		return estimatedMemoryUse.get();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of entries removed because the cache was too large or they expired
+	 *
+	 * @return count of evictions
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the number of entries currently stored
+	 */
+	public int size() {
+		int n = 0;
+		for (Stripe stripe : stripes) {
+			stripe.lock.lock();
+			try {
+				n += stripe.map.size();
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		return n;
+	}
+
+	public String toString() {
+		return "ConcurrentCache[entries=" + size() + ", bytes=" + getEstimatedMemoryUse() + ", hits=" + getHitCount()
+				+ ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+
+	private Stripe stripeFor(String key) {
+		int h = key.hashCode();
+		return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+	}
+
+	private void removed(Entry entry, boolean evicted) {
+		estimatedMemoryUse.addAndGet(-entry.size);
+		if (evicted) evictions.incrementAndGet();
+	}
+
+	/*
+	 * Remove expired entries and then the least recently used ones until the data fits.
+	 * Only one thread evicts at a time; the entry just stored (keep) is never removed
+	 */
+	private void evictIfNeeded(String keep) {
+		if (estimatedMemoryUse.get() <= maxMemory) return;
+		evictionLock.lock();
+		try {
+			long now = System.nanoTime();
+			for (Stripe stripe : stripes) stripe.removeExpired(now);
+			while (estimatedMemoryUse.get() > maxMemory) {
+				// Find the stripe whose least recently used entry is oldest
+				Stripe oldest = null;
+				long oldestAccess = 0;
+				for (Stripe stripe : stripes) {
+					Entry e = stripe.eldest(keep);
+					if (e != null && (oldest == null || e.lastAccess - oldestAccess < 0)) {
+						oldest = stripe;
+						oldestAccess = e.lastAccess;
+					}
+				}
+				if (oldest == null || !oldest.removeEldest(keep)) break;
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private static final class Entry {
+		final String key;
+		final Dataset dataset;
+		final long size;
+		final long version;
+		final long expiresAt;               // System.nanoTime value; zero for never
+		volatile long lastAccess;
+
+		Entry(String key, Dataset dataset, long version, long now, long expiresAt) {
+			this.key = key;
+			this.dataset = dataset;
+			this.size = dataset.expectedSize();
+			this.version = version;
+			this.expiresAt = expiresAt;
+			this.lastAccess = now;
+		}
+
+		boolean expired(long now) {
+			return expiresAt != 0 && now - expiresAt >= 0;
+		}
+	}
+
+	/* A part of the cache with its own lock; the map is kept in access order so the eldest is least recently used */
+	private final class Stripe {
+		final ReentrantLock lock = new ReentrantLock();
+		final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+
+		Entry eldest(String keep) {
+			lock.lock();
+			try {
+				for (Entry e : map.values())
+					if (!e.key.equals(keep)) return e;
+				return null;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean removeEldest(String keep) {
+			Entry removed = null;
+			lock.lock();
+			try {
+				Iterator<Entry> it = map.values().iterator();
+				while (it.hasNext()) {
+					Entry e = it.next();
+					if (!e.key.equals(keep)) {
+						it.remove();
+						removed = e;
+						break;
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (removed != null) removed(removed, true);
+			return removed != null;
+		}
+
+		void removeExpired(long now) {
+			lock.lock();
+			try {
+				Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+				while (it.hasNext()) {
+					Entry e = it.next().getValue();
+					if (e.expired(now)) {
+						it.remove();
+						removed(e, true);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
@@ -20,28 +20,78 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.brunel.data.Field;
+import org.brunel.data.io.StreamingCSV;
 import org.brunel.geom.Rect;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 public class ContentReader {
 	public static String readContentFromUrl(URI uri) throws IOException {
+		return readContent(openStream(uri));
+	}
+
+	/**
+	 * Opens a stream to read the content at a location
+	 *
+	 * @param uri location to read
+	 * @return open stream; the caller is responsible for closing it
+	 * @throws IOException if the location cannot be opened
+	 */
+	public static InputStream openStream(URI uri) throws IOException {
 		//TODO:  Centrally handle security
 		try {
 			//Setting User-Agent avoids receiving an http 403 error.
 			URLConnection httpcon = uri.toURL().openConnection();
 			httpcon.addRequestProperty("User-Agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.11 (KHTML, like Gecko) Chrome/23.0.1271.64 Safari/537.11");
 
-			return readContent(httpcon.getInputStream());
+			return httpcon.getInputStream();
 		} catch (IllegalArgumentException ex) {
 			throw new IllegalArgumentException("Could not read data from: " + uri, ex.getCause());
 		}
 	}
 
+	/**
+	 * Reads CSV content from a stream without holding the whole text in memory
+	 *
+	 * @param is stream of UTF-8 encoded CSV; read to the end but not closed
+	 * @return fields read from the content
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static Field[] readCSV(InputStream is) throws IOException {
+		return StreamingCSV.read(new InputStreamReader(is, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads CSV content from a location. Local files are memory-mapped and parsed directly from the mapped
+	 * bytes; other locations are streamed
+	 *
+	 * @param uri location to read
+	 * @return fields read from the content
+	 * @throws IOException if the location cannot be read
+	 */
+	public static Field[] readCSV(URI uri) throws IOException {
+		if ("file".equals(uri.getScheme())) {
+			try (FileChannel channel = FileChannel.open(Paths.get(uri), StandardOpenOption.READ)) {
+				// A single mapping is limited to 2GB; larger files are streamed instead
+				if (channel.size() <= Integer.MAX_VALUE)
+					return StreamingCSV.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+		try (InputStream stream = openStream(uri)) {
+			return readCSV(stream);
+		}
+	}
+
 	public static String readContent(InputStream is) throws IOException {
 		// Use StringBuilder to read the data in large chunks
 		StringBuilder builder = new StringBuilder();
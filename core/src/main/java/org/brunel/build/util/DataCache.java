@@ -22,18 +22,28 @@ import org.brunel.util.GeneratedData;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Brunel's access to Datasets via a cache.  The key must be unique.  If the key is an URL it will
  * be used to load the content if it is not in the cache.
+ * Lookups do not block each other; if several threads ask for the same uncached key at once, only one
+ * of them reads the data and the others wait for and share its result.
  */
 public class DataCache {
 
 	public static final String SAMPLE_DATA_LOCATION = "http://brunel.mybluemix.net/sample_data/";
 	// Local cache is needed because Brunel needs identical Datasets to be the same instance
-	private static final DatasetCache localCache = new SimpleCache();
-	private static DatasetCache userCache;
+	private static final ConcurrentCache localCache = new ConcurrentCache();
+	private static volatile DatasetCache userCache;
+	// Loads in progress, so concurrent requests for the same key share one read
+	private static final ConcurrentMap<String, FutureTask<Dataset>> loading = new ConcurrentHashMap<>();
 
 	/**
 	 * Specify an alternative cache implementation for storing Datasets by key.
@@ -41,23 +51,46 @@ public class DataCache {
 	 *
 	 * @param cache the alternate cache to use
 	 */
-	public static synchronized void useCache(DatasetCache cache) {
+	public static void useCache(DatasetCache cache) {
 		userCache = cache;
 	}
 
+	/**
+	 * The cache that holds all Datasets that have been read or stored. It can be used to change the memory
+	 * limit or time to live, and to monitor hits, misses and evictions.
+	 *
+	 * @return the local cache
+	 */
+	public static ConcurrentCache getLocalCache() {
+		return localCache;
+	}
+
 	/**
 	 * Store a dataset into the cache.  If a user cache is provided, the data will be stored there as well.
 	 *
 	 * @param dataKey unique identifier for data
 	 * @param data    the data to cache
 	 */
-	public static synchronized void store(String dataKey, Dataset data) {
+	public static void store(String dataKey, Dataset data) {
 		localCache.store(dataKey, data);
-		if (userCache != null) {
-			userCache.store(dataKey, data);
+		DatasetCache user = userCache;
+		if (user != null) {
+			user.store(dataKey, data);
 		}
 	}
 
+	/**
+	 * The version of the data held in the local cache under a key. This changes every time a dataset is
+	 * stored, including when data is read again after it expired or was evicted, so anything built from the
+	 * data can be keyed by it and will not be used once the data has been replaced.
+	 *
+	 * @param dataKey unique identifier for data
+	 * @return the version, or zero if the data is not currently cached
+	 */
+	public static long version(String dataKey) {
+		return localCache.version(dataKey);
+	}
+
 	/**
 	 * This method will return the value in the cache if it exists, and if not, it will read the data
 	 *
@@ -65,7 +98,7 @@ public class DataCache {
 	 * @param dataKey the location to read from
 	 * @return the built data set
 	 */
-	public static synchronized Dataset get(String dataKey) throws IOException {
+	public static Dataset get(String dataKey) throws IOException {
 		return get(dataKey, null);
 	}
 
@@ -78,21 +111,28 @@ public class DataCache {
 	 * @return the built data set
 	 * @throws IOException can happen if the key is not a URL and the content for the key is no longer in the cache
 	 */
-	public static synchronized Dataset get(String dataKey, InputStream is) throws IOException {
+	public static Dataset get(final String dataKey, final InputStream is) throws IOException {
 		if (dataKey == null) return null;
 
 		boolean useCache = true;                                    // Unless we ask to refresh, use it!
 
 		URI uri = makeURI(dataKey);
 		if (dataKey.startsWith("generate:")) {
+			// The key defines the data, so a cached copy is always current
+			Dataset data = localCache.retrieve(dataKey);
+			if (data != null) return data;
 			String content = dataKey.substring(0, "generate:".length()).trim();
-			Dataset data = GeneratedData.make(content);
+			data = GeneratedData.make(content);
 			localCache.store(dataKey, data);
+			return data;
 		} else if (dataKey.startsWith("raw:")) {
 			// Raw data is simply a CSV file with newlines replaced by semi-colons. This is intended for quick
 			// testing and not as a production facility -- complex CSV will likely fail.
-			Dataset data = Dataset.make(CSV.read(dataKey.substring(4).replaceAll(";", "\n")));
+			Dataset data = localCache.retrieve(dataKey);
+			if (data != null) return data;
+			data = Dataset.make(CSV.read(dataKey.substring(4).replaceAll(";", "\n")));
 			localCache.store(dataKey, data);
+			return data;
 		} else if (uri != null && uri.getScheme() != null) {
 			// We change our URI
 			if (uri.getScheme().equals("sample"))
@@ -106,22 +146,69 @@ public class DataCache {
 		Dataset dataset = useCache ? localCache.retrieve(dataKey) : null;
 		if (dataset != null) return dataset;
 
-		// Not found in local cache check if in user supplied cache.
-		// If so, stick it back in the local cache
-		if (userCache != null && useCache) {
-			dataset = userCache.retrieve(dataKey);
-			if (dataset != null) localCache.store(dataKey, dataset);
+		// Load it, or wait for the thread already loading it
+		final URI location = uri;
+		final boolean checkCaches = useCache;
+		FutureTask<Dataset> task = new FutureTask<>(new Callable<Dataset>() {
+			public Dataset call() throws IOException {
+				return load(dataKey, location, is, checkCaches);
+			}
+		});
+		FutureTask<Dataset> existing = loading.putIfAbsent(dataKey, task);
+		if (existing == null) {
+			try {
+				task.run();
+			} finally {
+				loading.remove(dataKey, task);
+			}
+			existing = task;
 		}
-		if (dataset != null) return dataset;
+		return result(existing);
+	}
 
-		// Actually read the data
-		String content = is == null ? ContentReader.readContentFromUrl(uri) : ContentReader.readContent(is);
-		dataset = Dataset.make(CSV.read(content));
+	private static Dataset load(String dataKey, URI uri, InputStream is, boolean useCache) throws IOException {
+		DatasetCache user = userCache;
+		Dataset dataset = null;
+		if (useCache) {
+			// Another thread may have finished loading it since we looked
+			dataset = localCache.retrieve(dataKey);
+			if (dataset != null) return dataset;
+
+			// Not found in local cache check if in user supplied cache.
+			// If so, stick it back in the local cache
+			if (user != null) {
+				dataset = user.retrieve(dataKey);
+				if (dataset != null) localCache.store(dataKey, dataset);
+			}
+			if (dataset != null) return dataset;
+		}
+
+		// Actually read the data, streaming it so the content is never held as a single String
+		if (is == null)
+			dataset = Dataset.make(ContentReader.readCSV(uri));
+		else
+			dataset = Dataset.make(ContentReader.readCSV(is));
 		localCache.store(dataKey, dataset);
-		if (userCache != null) userCache.store(dataKey, dataset);
+		if (user != null) user.store(dataKey, dataset);
 		return dataset;
 	}
 
+	/* Wait for a load, passing on any failure */
+	private static Dataset result(FutureTask<Dataset> task) throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for data to load");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
 	/* Returns null for invalid URIs */
 	private static URI makeURI(String key) {
 		try {
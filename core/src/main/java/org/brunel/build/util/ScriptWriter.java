@@ -18,15 +18,18 @@ package org.brunel.build.util;
 
 import org.brunel.data.Data;
 
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
 /**
- * A class to make it easier to output Javascript
+ * A class to make it easier to output Javascript.
+ * The script is either collected as a String or streamed to a target Writer as it is written.
  */
 public class ScriptWriter {
 
@@ -35,15 +38,28 @@ public class ScriptWriter {
 	public final BuilderOptions options;
 	private final int lineMaxLength;
 	private final PrintWriter out;
-	private final StringWriter base;
+	private final StringWriter base;            // Holds the content when not streaming
+	private final ColumnTracker tracker;        // Knows where we are on the current line
+	private char[] textBuffer = new char[256];  // Re-used for copying text from builders
 	private int consecutiveNewLines;
 	private int indentLevel;
 
 	public ScriptWriter(BuilderOptions options) {
+		this(options, null);
+	}
+
+	/**
+	 * Creates a writer that sends the script to a target as it is written
+	 *
+	 * @param options build options
+	 * @param target  where to write the script; if null the content is kept and available from content()
+	 */
+	public ScriptWriter(BuilderOptions options, Writer target) {
 		this.options = options;
 		lineMaxLength = options.readableJavascript ? 100 : 400;
-		base = new StringWriter();
-		out = new PrintWriter(base);
+		base = target == null ? new StringWriter() : null;
+		tracker = new ColumnTracker(target == null ? base : target);
+		out = new PrintWriter(tracker);
 		consecutiveNewLines = 1;
 	}
 
@@ -76,6 +92,23 @@ public class ScriptWriter {
 		return this;
 	}
 
+	/**
+	 * Adds text from a builder without creating a String; used for large repeated content such as data rows
+	 *
+	 * @param text the text to add, exactly as it should appear
+	 * @return this
+	 */
+	public ScriptWriter addText(StringBuilder text) {
+		if (options.readableJavascript && consecutiveNewLines > 0)
+			for (int i = 0; i < indentLevel; i++) out.print(INDENT);
+		int n = text.length();
+		if (n > textBuffer.length) textBuffer = new char[Math.max(n, textBuffer.length * 2)];
+		text.getChars(0, n, textBuffer, 0);
+		out.write(textBuffer, 0, n);
+		consecutiveNewLines = 0;
+		return this;
+	}
+
 	public ScriptWriter addChained(Object... items) {
 		if (options.readableJavascript) {
 			return indentMore().onNewLine().add(".").add(items).indentLess();
@@ -134,18 +167,27 @@ public class ScriptWriter {
 		return ln();
 	}
 
+	/**
+	 * Finishes writing and returns the script
+	 *
+	 * @return the script, or null if it was streamed to a target
+	 */
 	public String content() {
 		out.close();
-		return base.toString();
+		return base == null ? null : base.toString();
+	}
+
+	/**
+	 * Flushes any streamed content to the target
+	 *
+	 * @return true if writing to the target has failed
+	 */
+	public boolean checkError() {
+		return out.checkError();
 	}
 
 	public int currentColumn() {
-		base.flush();
-		StringBuffer b = base.getBuffer();
-		int end = b.length() - 1;
-		int eol = b.lastIndexOf("\n");
-		if (eol < 0) eol = 0;
-		return end - eol;
+		return tracker.column();
 	}
 
 	public ScriptWriter endStatement() {
@@ -197,4 +239,46 @@ public class ScriptWriter {
 		if (options.readableJavascript) while (consecutiveNewLines < 2) ln();
 		else if (consecutiveNewLines == 0) ln();
 	}
+
+	/* Passes characters through, keeping track of the position within the current line */
+	private static final class ColumnTracker extends Writer {
+		private final Writer target;
+		private long written;                   // Total characters written
+		private long lineStart = -1;            // Characters written up to and including the last newline
+
+		private ColumnTracker(Writer target) {
+			this.target = target;
+		}
+
+		/* Matches the original definition: characters since the last newline, or one less than all if none */
+		int column() {
+			return (int) (lineStart < 0 ? written - 1 : written - lineStart);
+		}
+
+		public void write(char[] c, int off, int len) throws IOException {
+			for (int i = off + len - 1; i >= off; i--)
+				if (c[i] == '\n') {
+					lineStart = written + (i - off) + 1;
+					break;
+				}
+			written += len;
+			target.write(c, off, len);
+		}
+
+		public void write(String s, int off, int len) throws IOException {
+			int eol = s.lastIndexOf('\n', off + len - 1);
+			if (eol >= off) lineStart = written + (eol - off) + 1;
+			written += len;
+			target.write(s, off, len);
+		}
+
+		public void flush() throws IOException {
+			target.flush();
+		}
+
+		public void close() throws IOException {
+			if (target instanceof StringWriter) target.close();
+			else target.flush();            // The caller owns the target and closes it
+		}
+	}
 }
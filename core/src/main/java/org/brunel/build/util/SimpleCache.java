@@ -16,54 +16,11 @@
 
 package org.brunel.build.util;
 
-import org.brunel.data.Dataset;
-
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
-
 /**
- * A very simple and limited cache that stores a Dataset instance content by a key name.
+ * A cache that stores a Dataset instance content by a key name, evicting the least recently used data when
+ * the estimated memory use exceeds 512MB. It is a ConcurrentCache with the default settings.
  *
  * @author drope
  */
-public class SimpleCache implements DatasetCache {
-
-	/* Maximum amount of memory to allow in cache in bytes */
-	private static final long MAX_ESTIMATED_MEMORY = 512 * 1024 * 1024;
-
-	private final Map<String, Dataset> map = Collections.synchronizedMap(new MapCache());
-	private long estimatedMemoryUse;
-
-	@Override
-	public synchronized Dataset retrieve(String key) {
-		return map.get(key);
-	}
-
-	@Override
-	public synchronized void store(String key, Dataset dataset) {
-		Dataset previous = map.put(key, dataset);
-		if (previous != null) estimatedMemoryUse -= previous.expectedSize();
-		estimatedMemoryUse += dataset.expectedSize();
-	}
-
-	@Override
-	public synchronized void remove(String key) {
-		Dataset previous = map.remove(key);
-		if (previous != null) estimatedMemoryUse -= previous.expectedSize();
-	}
-
-	private class MapCache extends LinkedHashMap<String, Dataset> {
-		protected boolean removeEldestEntry(Map.Entry<String, Dataset> eldest) {
-			synchronized (SimpleCache.this) {
-				if (estimatedMemoryUse > MAX_ESTIMATED_MEMORY) {
-					// This will be removed, so reduce the total memory size
-					estimatedMemoryUse -= eldest.getValue().expectedSize();
-					return true;
-				} else {
-					return false;
-				}
-			}
-		}
-	}
+public class SimpleCache extends ConcurrentCache {
 }
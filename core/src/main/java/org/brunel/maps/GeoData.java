@@ -17,9 +17,9 @@
 package org.brunel.maps;
 
 import org.brunel.action.Param;
-import org.brunel.data.Data;
 import org.brunel.data.io.CSV;
 import org.brunel.geom.Point;
+import org.brunel.geom.Poly;
 import org.brunel.util.MappedLists;
 
 import java.io.IOException;
@@ -37,20 +37,24 @@ import java.util.Set;
 
 /**
  * This class reads in information needed to analyze geographic names, and provides a method to
- * build the mapping needed for a set of feature names. It is a singleton class - it holds a lot of data!
+ * build the mapping needed for a set of feature names. It is a singleton class.
+ * Feature names are looked up in a pre-built binary index (see GeoIndex); the label points
+ * are only read when they are first needed.
  */
 class GeoData {
 
-    private static GeoData INSTANCE;                                                         // The singleton
+    // Holds the singleton, which is created when first requested
+    private static class Holder {
+        private static final GeoData INSTANCE = new GeoData();
+    }
 
     /**
      * Gets the singleton instance
      *
      * @return the analysis instance to use
      */
-    public static synchronized GeoData instance() {
-        if (INSTANCE == null) INSTANCE = new GeoData();
-        return INSTANCE;
+    public static GeoData instance() {
+        return Holder.INSTANCE;
     }
 
     public static String getQuality(Param[] diagramParameters) {
@@ -79,43 +83,28 @@ class GeoData {
         return contained;
     }
 
-    private final Map<String, List<Feature>> featureMap;  // A map from names to where to find them
+    private final GeoIndex featureIndex;                  // Where to find features by name
     private final Map<String, GeoFile> filesByName;       // A map of canonical name to file
-    private final Map<String, LabelPoint> labelsByName;   // A map of canonical name to labels
     private final GeoFile[] geoFiles;                     // Feature files we can use
+    private volatile GeoFileGrid fileGrid;                // Finds files covering points; built when needed
+    private volatile Map<String, LabelPoint> labelsByName;   // A map of canonical name to labels; read when needed
 
     private GeoData() {
         try {
-            // Read in the feature information file
-            InputStream is = GeoData.class.getResourceAsStream("/org/brunel/maps/geoinfo/featureFiles.txt");
-            LineNumberReader rdr = new LineNumberReader(new InputStreamReader(is, "utf-8"));
-            geoFiles = readFileDescriptions(rdr);                       // The files
-            filesByName = makeFileNameMap(geoFiles);                    // So we can identify them by name
-
-            is = GeoData.class.getResourceAsStream("/org/brunel/maps/geoinfo/featureDetails.txt");
-            rdr = new LineNumberReader(new InputStreamReader(is, "utf-8"));
-            featureMap = readFeatureDescriptions(rdr, filesByName);     // Map from features to files & ids
-            rdr.close();
-
-            // Read label file information
-            is = GeoData.class.getResourceAsStream("/org/brunel/maps/geoinfo/locations.txt");
-            rdr = new LineNumberReader(new InputStreamReader(is, "utf-8"));
-            labelsByName = readLabels(rdr, filesByName);
-            rdr.close();
-
-        } catch (Exception e) {
+            featureIndex = GeoIndex.load();
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        addVariantFeatureNames();
-
+        geoFiles = featureIndex.files();
+        filesByName = makeFileNameMap(geoFiles);                    // So we can identify them by name
     }
 
     public List<Feature> featureByName(String s) {
         s = GeoNaming.canonical(s);
-        List<Feature> result = featureMap.get(s);
+        List<Feature> result = featureIndex.get(s);
         if (result != null) return result;
         for (String t : GeoNaming.variants(s)) {
-            result = featureMap.get(t);
+            result = featureIndex.get(t);
             if (result != null) return result;
         }
         return null;
@@ -125,7 +114,40 @@ class GeoData {
         return geoFiles;
     }
 
-    private Map<String, GeoFile> makeFileNameMap(GeoFile[] geoFiles) {
+    /**
+     * Finds the files that cover the points of a polygon, using only files that intersect its bounds
+     *
+     * @param poly polygon whose points are to be located
+     * @return map from each file to the points it covers
+     */
+    MappedLists<GeoFile, Object> mapPointsToFiles(Poly poly) {
+        if (poly.count() == 0) return new MappedLists<>();
+        return grid().filesCovering(poly.points, poly.bounds);
+    }
+
+    private GeoFileGrid grid() {
+        GeoFileGrid result = fileGrid;
+        if (result == null) {
+            synchronized (this) {
+                if (fileGrid == null) fileGrid = new GeoFileGrid(geoFiles);
+                result = fileGrid;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The label points within a file, sorted by importance
+     *
+     * @param file the feature file
+     * @return the points in it
+     */
+    public List<LabelPoint> labelsIn(GeoFile file) {
+        labels();
+        return file.pts;
+    }
+
+    static Map<String, GeoFile> makeFileNameMap(GeoFile[] geoFiles) {
         Map<String, GeoFile> map = new HashMap<>();
         for (GeoFile s : geoFiles) {
             map.put(GeoNaming.canonical(s.name), s);
@@ -134,14 +156,24 @@ class GeoData {
         return map;
     }
 
-    // Add variants of names by normalizing removing accent marks and periods
-    private void addVariantFeatureNames() {
-        List<String> keys = new ArrayList<>(featureMap.keySet());
-        for (String s : keys) {
-            for (String t : GeoNaming.variants(s))
-                if (!featureMap.containsKey(t))
-                    featureMap.put(t, featureMap.get(s));
+    // Reads the labels when they are first needed, adding them to the files that contain them
+    private Map<String, LabelPoint> labels() {
+        Map<String, LabelPoint> result = labelsByName;
+        if (result == null) {
+            synchronized (this) {
+                result = labelsByName;
+                if (result == null) {
+                    InputStream is = GeoData.class.getResourceAsStream("/org/brunel/maps/geoinfo/locations.txt");
+                    try (LineNumberReader rdr = new LineNumberReader(new InputStreamReader(is, "utf-8"))) {
+                        result = readLabels(rdr, filesByName);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    labelsByName = result;
+                }
+            }
         }
+        return result;
     }
 
     /* Read the labels and add them to the appropriate geo files */
@@ -173,43 +205,6 @@ class GeoData {
         return result;
     }
 
-    private Map<String, List<Feature>> readFeatureDescriptions(LineNumberReader rdr, Map<String, GeoFile> filesByName) throws IOException {
-        HashMap<String, List<Feature>> map = new HashMap<>();
-        // Read the features
-        while (true) {
-            String line = rdr.readLine();
-            if (line == null) break;
-            String[] parts = line.split(",");
-            GeoFile geoFile = filesByName.get(GeoNaming.canonical(parts[0]));
-            int id = Data.parseInt(parts[1]);
-            if (geoFile == null) throw new IllegalStateException("Unknown file name: " + parts[0]);
-            Feature data = new Feature(geoFile, id);
-            for (int i = 2; i < parts.length; i++) {
-                String name = parts[i];
-                List<Feature> list = map.get(name);
-                if (list == null) {
-                    list = new ArrayList<>();
-                    map.put(name, list);
-                }
-                list.add(data);
-            }
-        }
-        return map;
-    }
-
-    private GeoFile[] readFileDescriptions(LineNumberReader rdr) throws IOException {
-        // Read the names of the files and their sizes (in K)
-        List<GeoFile> list = new ArrayList<>();
-        while (true) {
-            String[] fileLine = rdr.readLine().split("\\|");
-            if (fileLine.length != 4) break;                            // End of the file definitions
-            list.add(new GeoFile(fileLine[0], fileLine[1], fileLine[2]));
-        }
-
-        return list.toArray(new GeoFile[list.size()]);
-    }
-
-
     public List<GeoFile> makeRequiredFiles(Param[] params) {
         Set<GeoFile> byFeature = new HashSet<>();
         List<GeoFile> result = new ArrayList<>();
@@ -220,11 +215,11 @@ class GeoData {
             if (f != null) {
                 result.add(f);
             } else {
-                List<Feature> features = featureMap.get(key);
+                List<Feature> features = featureIndex.get(key);
                 if (features != null) {
                     byFeature.add(features.get(0).file);
                 } else {
-                    LabelPoint location = labelsByName.get(key);
+                    LabelPoint location = labels().get(key);
                     if (location != null)
                         byFeature.add(smallestFileContaining(location));
 
@@ -238,11 +233,9 @@ class GeoData {
 
     private GeoFile smallestFileContaining(Point point) {
         GeoFile result = null;
-        for (GeoFile g : geoFiles) {
-            if (g.covers(point)) {
-                if (result == null || g.bounds.area() < result.bounds.area())
-                    result = g;
-            }
+        for (GeoFile g : grid().filesCovering(point)) {
+            if (result == null || g.bounds.area() < result.bounds.area())
+                result = g;
         }
         return result;
     }
@@ -254,11 +247,11 @@ class GeoData {
 
 
     /* where a feature can be found */
-    private static class Feature {
+    static class Feature {
         final GeoFile file;
         final int id;
 
-        private Feature(GeoFile file, int id) {
+        Feature(GeoFile file, int id) {
             this.file = file;
             this.id = id;
         }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.maps;
+
+import org.brunel.geom.Point;
+import org.brunel.geom.Rect;
+import org.brunel.util.MappedLists;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid over the bounds of the feature files' hulls, so that the files that cover a point
+ * can be found without testing every file. Each cell records the files whose hulls overlap it, in file order,
+ * and whether the cell lies wholly inside or wholly outside the hull. Only files whose hull boundary passes
+ * through the cell need the point-in-polygon test.
+ *
+ * The polygon test treats a point level with a hull vertex specially, so for those points the full test is
+ * always used; this keeps the results identical to testing every file.
+ */
+class GeoFileGrid {
+
+    private static final double CELL_SIZE = 5.0;            // In degrees
+    private static final byte TEST = 0, INSIDE = 1, OUTSIDE = 2;
+
+    private final GeoFile[] files;
+    private final double[][] vertexY;                       // Sorted vertex y values for each file's hull
+    private final Rect extent;                              // Union of all hull bounds
+    private final int columns, rows;
+    private final int[][] cells;                            // File indices for each cell
+    private final byte[][] states;                          // Whether the cell needs testing against that file
+
+    GeoFileGrid(GeoFile[] files) {
+        this.files = files;
+        vertexY = new double[files.length][];
+        Rect all = null;
+        for (int k = 0; k < files.length; k++) {
+            Point[] hull = files[k].hull.points;
+            vertexY[k] = new double[hull.length];
+            for (int i = 0; i < hull.length; i++) vertexY[k][i] = hull[i].y;
+            Arrays.sort(vertexY[k]);
+            all = Rect.union(all, files[k].hull.bounds);
+        }
+        extent = all == null ? new Rect(0, 0, 0, 0) : all;
+        columns = Math.max(1, (int) Math.ceil(extent.width() / CELL_SIZE));
+        rows = Math.max(1, (int) Math.ceil(extent.height() / CELL_SIZE));
+
+        List<List<Integer>> lists = new ArrayList<>();
+        List<List<Byte>> cellStates = new ArrayList<>();
+        for (int i = 0; i < columns * rows; i++) {
+            lists.add(new ArrayList<Integer>());
+            cellStates.add(new ArrayList<Byte>());
+        }
+        for (int k = 0; k < files.length; k++) {
+            Rect b = files[k].hull.bounds;
+            int r0 = row(b.top), c0 = column(b.left), width = column(b.right) - c0 + 1;
+            boolean[] touched = touchedCells(files[k].hull.points, r0, c0, width, row(b.bottom) - r0 + 1);
+            for (int r = row(b.top); r <= row(b.bottom); r++)
+                for (int c = column(b.left); c <= column(b.right); c++) {
+                    Rect cell = cellBounds(r, c);
+                    if (!cell.intersects(b)) continue;
+                    byte state = touched[(r - r0) * width + (c - c0)] ? TEST : classify(files[k], cell);
+                    lists.get(r * columns + c).add(k);
+                    cellStates.get(r * columns + c).add(state);
+                }
+        }
+        cells = new int[lists.size()][];
+        states = new byte[lists.size()][];
+        for (int i = 0; i < cells.length; i++) {
+            int n = lists.get(i).size();
+            cells[i] = new int[n];
+            states[i] = new byte[n];
+            for (int j = 0; j < n; j++) {
+                cells[i][j] = lists.get(i).get(j);
+                states[i][j] = cellStates.get(i).get(j);
+            }
+        }
+    }
+
+    /**
+     * Finds the files that cover each of a set of points, restricted to files whose bounds intersect a region.
+     * The result is the same as testing every point against every such file, and the points
+     * are listed for each file in the order given.
+     *
+     * @param points points to test
+     * @param region only files whose bounds intersect this are used; may be null to use all files
+     * @return map from file to the points it covers
+     */
+    MappedLists<GeoFile, Object> filesCovering(Point[] points, Rect region) {
+        MappedLists<GeoFile, Object> map = new MappedLists<>();
+        for (Point p : points) {
+            if (!extent.contains(p)) continue;
+            int cell = row(p.y) * columns + column(p.x);
+            for (int j = 0; j < cells[cell].length; j++) {
+                int k = cells[cell][j];
+                if ((region == null || region.intersects(files[k].bounds)) && covers(k, states[cell][j], p))
+                    map.add(files[k], p);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Finds the files that cover a point
+     *
+     * @param p point to test
+     * @return covering files, in the original file order
+     */
+    List<GeoFile> filesCovering(Point p) {
+        List<GeoFile> result = new ArrayList<>();
+        if (!extent.contains(p)) return result;
+        int cell = row(p.y) * columns + column(p.x);
+        for (int j = 0; j < cells[cell].length; j++) {
+            int k = cells[cell][j];
+            if (covers(k, states[cell][j], p)) result.add(files[k]);
+        }
+        return result;
+    }
+
+    private boolean covers(int k, byte state, Point p) {
+        if (state == TEST || Arrays.binarySearch(vertexY[k], p.y) >= 0) return files[k].covers(p);
+        return state == INSIDE;
+    }
+
+    // Marks the cells (within the given block) that any edge of the polygon touches
+    private boolean[] touchedCells(Point[] poly, int r0, int c0, int width, int height) {
+        boolean[] touched = new boolean[width * height];
+        for (int i = 0, j = poly.length - 1; i < poly.length; j = i++) {
+            Point a = poly[j], b = poly[i];
+            for (int r = row(Math.min(a.y, b.y)); r <= row(Math.max(a.y, b.y)); r++)
+                for (int c = column(Math.min(a.x, b.x)); c <= column(Math.max(a.x, b.x)); c++) {
+                    // Check neighbors too, as cells share their edges
+                    for (int rr = Math.max(r - 1, r0); rr <= Math.min(r + 1, r0 + height - 1); rr++)
+                        for (int cc = Math.max(c - 1, c0); cc <= Math.min(c + 1, c0 + width - 1); cc++) {
+                            int index = (rr - r0) * width + (cc - c0);
+                            if (!touched[index] && segmentTouches(a, b, cellBounds(rr, cc))) touched[index] = true;
+                        }
+                }
+        }
+        return touched;
+    }
+
+    // When no hull edge touches the cell, it is all inside or all outside, so one point tells which.
+    // The point is chosen off-center so it is unlikely to be level with a hull vertex
+    private byte classify(GeoFile file, Rect cell) {
+        Point p = new Point(cell.left + 0.4871 * cell.width(), cell.top + 0.5137 * cell.height());
+        return file.covers(p) ? INSIDE : OUTSIDE;
+    }
+
+    // The area that points are assigned to the cell from, including its edges
+    private Rect cellBounds(int r, int c) {
+        double left = extent.left + c * CELL_SIZE, top = extent.top + r * CELL_SIZE;
+        double right = c == columns - 1 ? Math.max(extent.right, left + CELL_SIZE) : left + CELL_SIZE;
+        double bottom = r == rows - 1 ? Math.max(extent.bottom, top + CELL_SIZE) : top + CELL_SIZE;
+        return new Rect(left, right, top, bottom);
+    }
+
+    // Liang-Barsky clipping of the segment to the (closed) rectangle
+    private static boolean segmentTouches(Point a, Point b, Rect r) {
+        double dx = b.x - a.x, dy = b.y - a.y;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {a.x - r.left, r.right - a.x, a.y - r.top, r.bottom - a.y};
+        double t0 = 0, t1 = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) return false;                 // Parallel and outside
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) t0 = Math.max(t0, t);
+                else t1 = Math.min(t1, t);
+                if (t0 > t1) return false;
+            }
+        }
+        return true;
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) ((x - extent.left) / CELL_SIZE)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) ((y - extent.top) / CELL_SIZE)));
+    }
+}
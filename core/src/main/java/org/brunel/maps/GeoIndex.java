@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.maps;
+
+import org.brunel.data.Data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, read-only index from canonical feature names to the files and ids that define them.
+ * It is generated from the text files in 'geoinfo' at build time and stored as a single binary resource.
+ * Lookups work directly on the loaded buffer using a binary search, so no maps of names need to be built.
+ * If the binary resource is not available, the index is built in memory from the text files.
+ *
+ * The format (big-endian) is:
+ * int magic; int fileCount; fileCount x (string name, string bounds, string hull);
+ * int nameCount; nameCount x int offset (into the entries, sorted by the UTF-8 bytes of the name);
+ * entries, each: short nameLength, UTF-8 name bytes, short featureCount, featureCount x (short file, int id).
+ * Strings in the file section are written as an int length followed by UTF-8 bytes.
+ */
+final class GeoIndex {
+
+    static final String RESOURCE = "/org/brunel/maps/geoinfo/geoindex.bin";
+
+    private static final String TEXT_LOCATION = "/org/brunel/maps/geoinfo/";
+    private static final int MAGIC = 0x42474931;                            // "BGI1"
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Builds the binary index from the text files and writes it to a file.
+     * This is run as part of the build.
+     *
+     * @param args the file to write
+     * @throws IOException if the files cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        File file = new File(args[0]);
+        if (file.getParentFile() != null) file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(buildFromText());
+        }
+    }
+
+    /**
+     * Loads the index from the binary resource, or builds it if the resource is not available
+     *
+     * @return loaded index
+     * @throws IOException if the data cannot be read
+     */
+    static GeoIndex load() throws IOException {
+        InputStream is = GeoIndex.class.getResourceAsStream(RESOURCE);
+        if (is == null) return new GeoIndex(ByteBuffer.wrap(buildFromText()));
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 22);
+            byte[] buffer = new byte[1 << 16];
+            for (int n; (n = is.read(buffer)) > 0; ) bytes.write(buffer, 0, n);
+            return new GeoIndex(ByteBuffer.wrap(bytes.toByteArray()));
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Reads the text definitions and creates the binary form of the index
+     *
+     * @return the bytes of the index
+     * @throws IOException if the text files cannot be read
+     */
+    static byte[] buildFromText() throws IOException {
+        List<String[]> fileDescriptions;
+        try (LineNumberReader rdr = open("featureFiles.txt")) {
+            fileDescriptions = readFileDescriptions(rdr);
+        }
+        GeoFile[] geoFiles = new GeoFile[fileDescriptions.size()];
+        Map<GeoFile, Integer> fileIndices = new IdentityHashMap<>();
+        for (int i = 0; i < geoFiles.length; i++) {
+            String[] d = fileDescriptions.get(i);
+            geoFiles[i] = new GeoFile(d[0], d[1], d[2]);
+            fileIndices.put(geoFiles[i], i);
+        }
+
+        Map<String, List<GeoData.Feature>> featureMap;
+        try (LineNumberReader rdr = open("featureDetails.txt")) {
+            featureMap = readFeatureDescriptions(rdr, GeoData.makeFileNameMap(geoFiles));
+        }
+        addVariantFeatureNames(featureMap);
+
+        // Sort the names by their encoded bytes, which is the order used for searching
+        final Map<String, byte[]> encoded = new HashMap<>();
+        for (String s : featureMap.keySet()) encoded.put(s, s.getBytes(UTF8));
+        String[] names = featureMap.keySet().toArray(new String[featureMap.size()]);
+        Arrays.sort(names, new Comparator<String>() {
+            public int compare(String a, String b) {
+                return compareBytes(encoded.get(a), encoded.get(b));
+            }
+        });
+
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(entryBytes);
+        int[] offsets = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            offsets[i] = entries.size();
+            byte[] name = encoded.get(names[i]);
+            List<GeoData.Feature> features = featureMap.get(names[i]);
+            entries.writeShort(name.length);
+            entries.write(name);
+            entries.writeShort(features.size());
+            for (GeoData.Feature f : features) {
+                entries.writeShort(fileIndices.get(f.file));
+                entries.writeInt(f.id);
+            }
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(entries.size() + 4 * names.length + (1 << 18));
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeInt(MAGIC);
+        out.writeInt(fileDescriptions.size());
+        for (String[] d : fileDescriptions)
+            for (int i = 0; i < 3; i++) {
+                byte[] b = d[i].getBytes(UTF8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+        out.writeInt(names.length);
+        for (int offset : offsets) out.writeInt(offset);
+        entryBytes.writeTo(out);
+        out.flush();
+        return result.toByteArray();
+    }
+
+    private final GeoFile[] files;              // Feature files, in index order
+    private final ByteBuffer data;              // The whole index
+    private final int offsetsStart;             // Where the offsets table starts
+    private final int entriesStart;             // Where the entries start
+    private final int count;                    // Number of names
+
+    /**
+     * Creates the index over a buffer holding its binary form.
+     * Only absolute reads are made on the buffer, so lookups are safe from multiple threads.
+     *
+     * @param data index data
+     */
+    GeoIndex(ByteBuffer data) {
+        this.data = data;
+        if (data.getInt(0) != MAGIC) throw new IllegalStateException("Geographic index has an unknown format");
+        int pos = 4;
+        files = new GeoFile[data.getInt(pos)];
+        pos += 4;
+        String[] parts = new String[3];
+        for (int i = 0; i < files.length; i++) {
+            for (int j = 0; j < 3; j++) {
+                int len = data.getInt(pos);
+                parts[j] = decode(pos + 4, len);
+                pos += 4 + len;
+            }
+            files[i] = new GeoFile(parts[0], parts[1], parts[2]);
+        }
+        count = data.getInt(pos);
+        offsetsStart = pos + 4;
+        entriesStart = offsetsStart + 4 * count;
+    }
+
+    GeoFile[] files() {
+        return files;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Finds the features defined for a canonical name
+     *
+     * @param name canonical name, including any variants
+     * @return the features, or null if the name is not known
+     */
+    List<GeoData.Feature> get(String name) {
+        byte[] key = name.getBytes(UTF8);
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int pos = entriesStart + data.getInt(offsetsStart + 4 * mid);
+            int c = compareName(pos, key);
+            if (c < 0) low = mid + 1;
+            else if (c > 0) high = mid - 1;
+            else return features(pos + 2 + key.length);
+        }
+        return null;
+    }
+
+    private List<GeoData.Feature> features(int pos) {
+        int n = data.getShort(pos) & 0xffff;
+        pos += 2;
+        List<GeoData.Feature> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(new GeoData.Feature(files[data.getShort(pos) & 0xffff], data.getInt(pos + 2)));
+            pos += 6;
+        }
+        return result;
+    }
+
+    // Compares the name stored at the position with the key, as unsigned bytes
+    private int compareName(int pos, byte[] key) {
+        int len = data.getShort(pos) & 0xffff;
+        pos += 2;
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int d = (data.get(pos + i) & 0xff) - (key[i] & 0xff);
+            if (d != 0) return d;
+        }
+        return len - key.length;
+    }
+
+    private String decode(int pos, int len) {
+        byte[] bytes = new byte[len];
+        for (int i = 0; i < len; i++) bytes[i] = data.get(pos + i);
+        return new String(bytes, UTF8);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int d = (a[i] & 0xff) - (b[i] & 0xff);
+            if (d != 0) return d;
+        }
+        return a.length - b.length;
+    }
+
+    private static LineNumberReader open(String name) throws IOException {
+        InputStream is = GeoIndex.class.getResourceAsStream(TEXT_LOCATION + name);
+        if (is == null) throw new IOException("Cannot find geographic information: " + name);
+        return new LineNumberReader(new InputStreamReader(is, UTF8));
+    }
+
+    // Add variants of names by normalizing removing accent marks and periods
+    private static void addVariantFeatureNames(Map<String, List<GeoData.Feature>> featureMap) {
+        List<String> keys = new ArrayList<>(featureMap.keySet());
+        for (String s : keys) {
+            for (String t : GeoNaming.variants(s))
+                if (!featureMap.containsKey(t))
+                    featureMap.put(t, featureMap.get(s));
+        }
+    }
+
+    private static Map<String, List<GeoData.Feature>> readFeatureDescriptions(LineNumberReader rdr, Map<String, GeoFile> filesByName) throws IOException {
+        HashMap<String, List<GeoData.Feature>> map = new HashMap<>();
+        // Read the features
+        while (true) {
+            String line = rdr.readLine();
+            if (line == null) break;
+            String[] parts = line.split(",");
+            GeoFile geoFile = filesByName.get(GeoNaming.canonical(parts[0]));
+            int id = Data.parseInt(parts[1]);
+            if (geoFile == null) throw new IllegalStateException("Unknown file name: " + parts[0]);
+            GeoData.Feature data = new GeoData.Feature(geoFile, id);
+            for (int i = 2; i < parts.length; i++) {
+                String name = parts[i];
+                List<GeoData.Feature> list = map.get(name);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    map.put(name, list);
+                }
+                list.add(data);
+            }
+        }
+        return map;
+    }
+
+    private static List<String[]> readFileDescriptions(LineNumberReader rdr) throws IOException {
+        // Read the names of the files, their bounds and hulls (and sizes, which are not needed)
+        List<String[]> list = new ArrayList<>();
+        while (true) {
+            String line = rdr.readLine();
+            if (line == null) break;
+            String[] fileLine = line.split("\\|");
+            if (fileLine.length != 4) break;                            // End of the file definitions
+            list.add(fileLine);
+        }
+        return list;
+    }
+}
@@ -86,7 +86,7 @@ public class GeoInformation {
 
 		for (GeoMapping g : geo.values()) {
 			for (GeoFile f : g.files) {
-				for (LabelPoint p : f.pts)
+				for (LabelPoint p : GeoData.instance().labelsIn(f))
 					if (hull.bounds.contains(p)) {
 						points.add(p);
 					}
@@ -49,13 +49,14 @@ public class GeoMapping {
      */
     public static GeoMapping createGeoMapping(Poly polygon, List<GeoFile> required, GeoData geoAnalysis, String quality, GeoInformation geoInfo) {
         HashSet<Object> unmatched = new HashSet<>();
-        MappedLists<GeoFile, Object> map = mapBoundsToFiles(polygon, geoAnalysis.getGeoFiles());
+        MappedLists<GeoFile, Object> map = geoAnalysis.mapPointsToFiles(polygon);
         GeoMapping mapping = new GeoMapping(required, unmatched, map, quality, geoInfo);
         return mapping.fileCount() > 0 ? mapping : null;
     }
 
-    // Create a map from GeoFile index to the points that file contains.
-    private static MappedLists<GeoFile, Object> mapBoundsToFiles(Poly poly, GeoFile[] geoFiles) {
+    // Create a map from GeoFile index to the points that file contains by testing every point against every file.
+    // GeoData.mapPointsToFiles gives the same result using a spatial index; this is kept for comparison
+    static MappedLists<GeoFile, Object> mapBoundsToFiles(Poly poly, GeoFile[] geoFiles) {
         MappedLists<GeoFile, Object> map = new MappedLists<>();
         if (poly.count() == 0) return map;
         Rect bounds = poly.bounds;
@@ -30,75 +30,95 @@ import java.util.List;
  * Non field Actions and synthetic fields are preserved as is from
  * the original.  Dual encoded field actions will retain an index to the first use of the field in the original action.
  *
- * Scoring is currently done by comparing the field names as well as the categorical preference and the number
- * of unique values.  Continuous fields are
- * matched using closeness of their distribution properties (variance, skewness and kurtosis).
+ * The scores for each candidate field are calculated by {@link FieldFeatures}; the choices are held best first.
  *
  * @author drope
  */
 class BestActionParameterSet {
 
-    private ArrayList<ActionParameterChoice> actionChoices;     // Individual parameter choices
-    private final int numChoices;                               // Upper limit on number choices to retain.
-    private static final double REALLY_BAD = .000001;           //A very poor score
+    private List<ActionParameterChoice> actionChoices;          // Individual parameter choices, best first
 
-    public BestActionParameterSet(Dataset originalData, Dataset newData, Param[] originalParams,
-                                  int actionParameterIndex, int numChoices) {
-
-        this.numChoices = numChoices;
+    /**
+     * Decides whether a parameter needs to be matched against the new data
+     *
+     * @param originalData         the original data
+     * @param originalParams       all the parameters of the action
+     * @param actionParameterIndex the parameter to check
+     * @return a set containing only the original parameter if it is to be left as is, otherwise null
+     */
+    static BestActionParameterSet makeFixed(Dataset originalData, Param[] originalParams, int actionParameterIndex) {
+        BestActionParameterSet set = new BestActionParameterSet();
         Param p = originalParams[actionParameterIndex];
 
-        //Builds up the list of choices using the new data set.
         //Preserve non field actions, synthetic fields and dual encoded
-        if (!addNonFieldChoice(p) && !addSyntheticFieldChoice(originalData, p)
-                && !addDualEncodedFieldChoice(originalParams, actionParameterIndex)) {
-            addFieldChoices(originalData, newData, p);
-        }
-
+        if (set.addNonFieldChoice(p) || set.addSyntheticFieldChoice(originalData, p)
+                || set.addDualEncodedFieldChoice(originalParams, actionParameterIndex))
+            return set;
+        return null;
     }
 
     /**
-     * Remove and return next best alternative.  The last choice is always retained.
+     * Makes the choices for a field parameter
      *
-     * @param restrictedFields fields that cannot be used (typically because they have already been used).
-     * @return the next best action parameter.
+     * @param parm       the original parameter
+     * @param candidates fields in the new data that can be used
+     * @param scores     score for each candidate field
+     * @param numChoices upper limit on number choices to retain
+     * @return the best choices
      */
-    public ActionParameterChoice pullNextActionParameterChoice(List<String> restrictedFields) {
+    static BestActionParameterSet makeFieldChoices(Param parm, Field[] candidates, double[] scores, int numChoices) {
+        BestActionParameterSet set = new BestActionParameterSet();
+        set.actionChoices = new ArrayList<>(candidates.length);
+        for (int i = 0; i < candidates.length; i++) {
+            Param newParam = Param.makeField(candidates[i].name).addModifiers(parm.modifiers());
+            set.actionChoices.add(new ActionParameterChoice(newParam, scores[i]));
+        }
 
-        if (actionChoices.size() == 1) return actionChoices.get(0);
+        //Retain only top ones
+        Collections.sort(set.actionChoices);
+        if (set.actionChoices.size() > numChoices) {
+            set.actionChoices.subList(numChoices, set.actionChoices.size()).clear();
+        }
+        return set;
+    }
 
-        for (ActionParameterChoice c : actionChoices) {
-            if (!containsRestrictedField(c, restrictedFields)) {
-                actionChoices.remove(c);
-                return c;
+    //Whether the field is being used as nominal in the action
+    static boolean declaredNominal(Param p) {
+        Param[] modifiers = p.modifiers();
+        for (Param m : modifiers) {
+            if (m.type() == Type.option) {
+                String o = m.asString();
+                if (o.equals("nominal")) return true;
             }
         }
+        return false;
+    }
 
-        ActionParameterChoice c = actionChoices.get(0);
-        actionChoices.remove(c);
-        return c;
+    private BestActionParameterSet() {
     }
 
     /**
-     * Number of action parameters remaining.
+     * A choice for the parameter
      *
-     * @return
+     * @param index which choice; zero is the best
+     * @return the choice
      */
-    public int size() {
-        return actionChoices.size();
+    public ActionParameterChoice get(int index) {
+        return actionChoices.get(index);
     }
 
-    private boolean containsRestrictedField(ActionParameterChoice c, List<String> restrictedFields) {
-
-        for (String f : restrictedFields) {
-            if (f.equals(c.getActionParameter().asField())) return true;
-        }
-        return false;
+    /**
+     * Number of action parameters available.
+     *
+     * @return number of choices
+     */
+    public int size() {
+        return actionChoices.size();
     }
 
     //Ensures only one alternative
     private void leaveAsIs(ActionParameterChoice choice) {
-        actionChoices = new ArrayList<ActionParameterChoice>(1);
+        actionChoices = new ArrayList<>(1);
         actionChoices.add(choice);
     }
 
@@ -141,175 +161,4 @@ class BestActionParameterSet {
 
     }
 
-    private void addFieldChoices(Dataset originalData, Dataset newData, Param parm) {
-
-        if (!parm.isField()) return;
-        Field[] fields = newData.fields;
-        Field originalField = originalData.field(parm.asField(), true);
-
-        actionChoices = new ArrayList<ActionParameterChoice>(fields.length);
-
-        for (Field f : fields) {
-            //skip any synthetic fields
-            if (!f.isSynthetic()) {
-                //geo-mean the current two scores
-                double scoreName = scoreFieldByNameCloseness(originalField.label, f.label);
-                double scoreFieldValueCloseness = scoreFieldByValueCloseness(originalField, f, declaredNominal(parm));
-                double score = Math.sqrt(scoreName * scoreFieldValueCloseness);
-                Param newParam = Param.makeField(f.name).addModifiers(parm.modifiers());
-                actionChoices.add(new ActionParameterChoice(newParam, score));
-            }
-        }
-
-        //Retain only top ones
-        Collections.sort(actionChoices);
-        if (actionChoices.size() > numChoices) {
-            actionChoices.subList(numChoices, actionChoices.size()).clear();
-        }
-
-    }
-
-    //Whether the field is being used as nominal in the action
-    private boolean declaredNominal(Param p) {
-        Param[] modifiers = p.modifiers();
-        for (Param m : modifiers) {
-            if (m.type() == Type.option) {
-                String o = m.asString();
-                if (o.equals("nominal")) return true;
-            }
-        }
-        return false;
-    }
-
-    //Score based on field name closeness
-    private double scoreFieldByNameCloseness(String origName, String newName) {
-
-//		String nice1 = w.nicelyReadable(origName);
-//		String nice2 = w.nicelyReadable(newName);
-
-        int lcs = getLongestCommonSubstringLength(origName, newName);
-
-        double score = (double) lcs / (double) origName.length();
-
-        //If we didn't org.brunel.app.match at least 75% of the characters then it probably does not matter.
-        return score >= .75 ? score : 0.1;
-
-    }
-
-    private int getLongestCommonSubstringLength(String a, String b) {
-        if (a.length() == 0 || b.length() == 0)
-            return 0;
-
-        int maxLen = 0;
-        final int lenA = a.length();
-        final int lenB = b.length();
-        final int[][] table = new int[lenA + 1][lenB + 1];
-
-        for (int i = 1; i <= lenA; i++)
-            for (int j = 1; j <= lenB; j++)
-                if (a.charAt(i - 1) == b.charAt(j - 1)) {
-                    if (i == 1 || j == 1)
-                        table[i][j] = 1;
-                    else
-                        table[i][j] = table[i - 1][j - 1] + 1;
-
-                    if (table[i][j] > maxLen)
-                        maxLen = table[i][j];
-                }
-        return maxLen;
-    }
-
-    //Score based closeness of the values of the fields
-    private double scoreFieldByValueCloseness(Field origField, Field newField, boolean originalDeclaredNominal) {
-
-        // Check for a "key" or identifier status -- if so, that's all we want to know
-        boolean originalLooksLikeKey = origField.uniqueValuesCount() > 0.7 * origField.rowCount() && origField.preferCategorical();
-        if (originalLooksLikeKey) {
-            double keyLikeScore = ((double)newField.uniqueValuesCount()) / newField.rowCount();
-            if (newField.preferCategorical())
-                return 0.1 * keyLikeScore;
-            else
-                return keyLikeScore;
-        }
-
-        double scoreSimilarCounts = fractionDifferent(origField.uniqueValuesCount(), newField.uniqueValuesCount());
-
-
-        if (originalDeclaredNominal) {
-            // When we actually request a nominal field, the type of the other field is less important
-            // Return the fraction difference in number unique values; that's all we care about
-            return scoreSimilarCounts;
-        }
-
-        // Categorical mismatch: We do not like it, so only 10% as good as a real categorical match
-        if (origField.preferCategorical() != newField.preferCategorical())
-            return 0.1 * scoreSimilarCounts;
-
-        // Categorical correct match!
-        if (origField.preferCategorical())
-            return scoreSimilarCounts;
-
-        // At this point we know we are looking for a numeric match
-
-        // If they are both dates, this is good
-        if (origField.isDate() && newField.isDate()) {
-            // This is a pretty good match -- make it at least 90% good match
-            // Remaining 10% is similarity of date scale
-            double meanSimilarity = propertyDiffScore("mean", origField, newField);
-            return 0.9 + 0.1 * meanSimilarity;
-        }
-
-        // We have numeric types (at least one of which is not a date) and will compare by distributions
-        // We also include a minimal factor of 0.5 because the types are good!
-
-        // Multiply a factor in to account for dates vs. non-dates
-        double typeMatch = (origField.isDate() == newField.isDate()) ? 1.0 : 0.3;
-        return typeMatch * (0.5 + 0.5 * scoreByDistributionCloseness(origField, newField));
-    }
-
-    //Will do all positive value comparisons.
-    //Assumption on skewness is that the sign does not really make a difference when choosing fields.
-    private double fractionDifferent(double v1, double v2) {
-        double av1 = Math.abs(v1);
-        double av2 = Math.abs(v2);
-        double max = Math.max(av1, av2);
-        return 1.0 - Math.abs(av1 - av2) / max;
-    }
-
-    private double propertyDiffScore(String numericProperty, Field f1, Field f2) {
-        Double p1 = f1.numProperty(numericProperty);
-        Double p2 = f2.numProperty(numericProperty);
-        if (p1 == null || p2 == null) return Double.NaN;
-        return fractionDifferent(p1, p2);
-
-    }
-
-    private double scoreByDistributionCloseness(Field origField, Field newField) {
-        //Pct. differences for distribution properties -- the measures which are location-independent
-        double skewScore = propertyDiffScore("skew", origField, newField);
-        double kurtosisScore = propertyDiffScore("kurtosis", origField, newField);
-
-        //Geo-mean of the three measures
-        double geoMean = geoMeanNoMissing(skewScore, kurtosisScore);
-
-        //No distribution properties probably a poor choice for a continuous field
-        return Double.isNaN(geoMean) ? REALLY_BAD : geoMean;
-
-    }
-
-    //Skip any missing values
-    private double geoMeanNoMissing(double... vals) {
-        double count = 0;
-        double sum = 1.0;
-
-        for (double val : vals) {
-            if (!Double.isNaN(val)) {
-                sum *= val;
-                count++;
-            }
-        }
-
-        return count > 0 ? Math.pow(sum, 1.0 / count) : Double.NaN;
-    }
-
 }
@@ -21,12 +21,18 @@ import org.brunel.action.ActionUtil;
 import org.brunel.action.Param;
 import org.brunel.build.util.DataCache;
 import org.brunel.data.Dataset;
+import org.brunel.data.Field;
 import org.brunel.model.VisItem;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Find the best matching action on a new data set given an action from an original data set.
@@ -36,6 +42,9 @@ import java.util.List;
 public class BestMatch {
 
 	private static final int PARAMETER_CHOICE_MAX = 20;
+	private static final int SEARCH_STEPS_MAX = 100000;         // Limit on combinations of choices to try
+	private static final int PARALLEL_FIELDS = 64;              // Score this many fields or more in parallel
+	private static ForkJoinPool pool;
 
 	/**
 	 * Find the best matching action
@@ -46,8 +55,7 @@ public class BestMatch {
 	 */
 	public static Action match(Dataset originalData, Dataset newData, Action a) {
 		List<BestActionParameterSet> parmSets = buildActionParameterSets(originalData, newData, a);
-		List<ActionChoice> choices = buildActionChoices(a,parmSets);
-		return choices.get(0).getAction();
+		return buildActionChoice(a, parmSets).getAction();
 	}
 
 	/**
@@ -80,58 +88,173 @@ public class BestMatch {
 		Param[] parms = ActionUtil.parameters(orignalAction);
 		ArrayList<BestActionParameterSet> choices = new ArrayList<>(parms.length);
 
-		for (int i =0; i < parms.length; i++) {
-			choices.add(new BestActionParameterSet(originalData, newData, parms,i , PARAMETER_CHOICE_MAX));
+		// Work out which parameters need matching, and the features of the original fields they use
+		FieldFeatures[] originals = new FieldFeatures[parms.length];
+		boolean[] nominal = new boolean[parms.length];
+		Map<String, FieldFeatures> originalFeatures = new HashMap<>();
+		for (int i = 0; i < parms.length; i++) {
+			BestActionParameterSet fixed = BestActionParameterSet.makeFixed(originalData, parms, i);
+			choices.add(fixed);
+			if (fixed != null) continue;
+			String name = parms[i].asField();
+			if (!originalFeatures.containsKey(name))
+				originalFeatures.put(name, new FieldFeatures(originalData.field(name, true)));
+			originals[i] = originalFeatures.get(name);
+			nominal[i] = BestActionParameterSet.declaredNominal(parms[i]);
+		}
+
+		// Score every candidate field for each parameter
+		List<Field> candidateList = new ArrayList<>();
+		for (Field f : newData.fields) if (!f.isSynthetic()) candidateList.add(f);
+		Field[] candidates = candidateList.toArray(new Field[candidateList.size()]);
+		double[][] scores = new double[parms.length][candidates.length];
+		scoreCandidates(originals, nominal, candidates, scores);
+
+		for (int i = 0; i < parms.length; i++) {
+			if (choices.get(i) == null)
+				choices.set(i, BestActionParameterSet.makeFieldChoices(parms[i], candidates, scores[i], PARAMETER_CHOICE_MAX));
 		}
 
 		return choices;
 
 	}
 
-	//Given a set of choices for each action parameter, creates a set of actions and scores for each one.
-	private static ArrayList<ActionChoice> buildActionChoices(Action originalAction, List<BestActionParameterSet> parmSets ) {
-
-		ArrayList<ActionChoice> choices = new ArrayList<>();
+	// Features of the candidate fields are found and scored in parallel when there are many of them
+	private static void scoreCandidates(FieldFeatures[] originals, boolean[] nominal, Field[] candidates, double[][] scores) {
+		int chunks = candidates.length < PARALLEL_FIELDS ? 1 : Math.min(candidates.length / 16, 4 * pool().getParallelism());
+		List<ScoreChunk> tasks = new ArrayList<>(chunks);
+		for (int c = 0; c < chunks; c++)
+			tasks.add(new ScoreChunk(originals, nominal, candidates, scores,
+					candidates.length * c / chunks, candidates.length * (c + 1) / chunks));
+		if (chunks == 1) {
+			tasks.get(0).call();
+			return;
+		}
+		for (Future<Void> f : pool().invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while matching fields", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+				throw new IllegalStateException("Could not match fields", e.getCause());
+			}
+		}
+	}
 
-		while (maxSize(parmSets) > 1) {
-			ActionParameterChoice[] parmChoice = new ActionParameterChoice[parmSets.size()];
-			ArrayList<String> usedFields = new ArrayList<>();
+	private static synchronized ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool();
+		return pool;
+	}
 
-			for (int i=0; i< parmChoice.length; i++) {
-				BestActionParameterSet parmSet = parmSets.get(i);
-				parmChoice[i] = parmSet.pullNextActionParameterChoice(usedFields);
-				int duelEncodedIndex = parmChoice[i].getDualEncodedLinkIndex();
-				String field = parmChoice[i].getField();
+	//Given a set of choices for each action parameter, creates the best scoring action.
+	private static ActionChoice buildActionChoice(Action originalAction, List<BestActionParameterSet> parmSets) {
+		// Prefer each field to be used only once; if there are not enough fields, allow them to be reused
+		Search search = new Search(parmSets, true);
+		if (search.best == null) search = new Search(parmSets, false);
+		if (search.best == null) throw new IllegalStateException("No fields in the new data can be used for: " + originalAction);
 
-				//Handle dual encoded action fields
-				if (duelEncodedIndex >=0) {
-					String f = parmChoice[duelEncodedIndex].getField();
-					Param p = Param.makeField(f).addModifiers(parmChoice[i].getActionParameter().modifiers());
-					parmChoice[i] = new ActionParameterChoice(p, parmChoice[i].getScore());
-				}
+		ActionParameterChoice[] parmChoice = new ActionParameterChoice[parmSets.size()];
+		for (int i = 0; i < parmChoice.length; i++) {
+			parmChoice[i] = parmSets.get(i).get(search.best[i]);
+			int duelEncodedIndex = parmChoice[i].getDualEncodedLinkIndex();
 
-				//Retain fields already used
-				if (field != null ) {
-					usedFields.add(field);
-				}
+			//Handle dual encoded action fields
+			if (duelEncodedIndex >= 0) {
+				String f = parmChoice[duelEncodedIndex].getField();
+				Param p = Param.makeField(f).addModifiers(parmChoice[i].getActionParameter().modifiers());
+				parmChoice[i] = new ActionParameterChoice(p, parmChoice[i].getScore());
 			}
-			choices.add(ActionChoice.makeActionChoice(originalAction, parmChoice));
 		}
-		Collections.sort(choices);
+		return ActionChoice.makeActionChoice(originalAction, parmChoice);
+	}
 
-		return choices;
+	/* Scores a range of the candidate fields against every parameter being matched */
+	private static final class ScoreChunk implements Callable<Void> {
+		private final FieldFeatures[] originals;
+		private final boolean[] nominal;
+		private final Field[] candidates;
+		private final double[][] scores;
+		private final int low, high;
+
+		ScoreChunk(FieldFeatures[] originals, boolean[] nominal, Field[] candidates, double[][] scores, int low, int high) {
+			this.originals = originals;
+			this.nominal = nominal;
+			this.candidates = candidates;
+			this.scores = scores;
+			this.low = low;
+			this.high = high;
+		}
+
+		public Void call() {
+			for (int j = low; j < high; j++) {
+				FieldFeatures candidate = new FieldFeatures(candidates[j]);
+				for (int i = 0; i < originals.length; i++)
+					if (originals[i] != null) scores[i][j] = originals[i].score(candidate, nominal[i]);
+			}
+			return null;
+		}
 	}
 
+	/**
+	 * Searches for the combination of parameter choices with the highest overall score.
+	 * Choices for each parameter are tried best first, and a partial combination is abandoned as soon as
+	 * it cannot beat the best found so far, even if every remaining parameter got its best choice.
+	 * The search stops after a fixed number of steps, keeping the best combination found.
+	 */
+	private static final class Search {
+		private final List<BestActionParameterSet> sets;
+		private final boolean distinct;                     // If true, a field may only be chosen once
+		private final double[] bestRemaining;               // Best possible score for the parameters from here on
+		private final int[] current;
+		private final Map<String, Integer> used = new HashMap<>();
+		private int[] best;
+		private double bestScore = -1;
+		private int steps;
 
-	//Current maximum size of each action parameter set.
-	private static int maxSize(List<BestActionParameterSet> parmSets ) {
-		int size = 0;
+		Search(List<BestActionParameterSet> sets, boolean distinct) {
+			this.sets = sets;
+			this.distinct = distinct;
+			int n = sets.size();
+			current = new int[n];
+			bestRemaining = new double[n + 1];
+			bestRemaining[n] = 1.0;
+			for (int i = n - 1; i >= 0; i--)
+				bestRemaining[i] = bestRemaining[i + 1] * (sets.get(i).size() == 0 ? 0 : sets.get(i).get(0).getScore());
+			search(0, 1.0);
+		}
 
-		for (BestActionParameterSet p : parmSets) {
-			size = Math.max(size, p.size());
+		private void search(int at, double score) {
+			if (at == current.length) {
+				if (score > bestScore) {
+					bestScore = score;
+					best = current.clone();
+				}
+				return;
+			}
+			BestActionParameterSet set = sets.get(at);
+			for (int k = 0; k < set.size() && steps < SEARCH_STEPS_MAX; k++) {
+				ActionParameterChoice choice = set.get(k);
+				double s = score * choice.getScore();
+				// Choices are best first, so once one cannot win, none of the rest can
+				if (s * bestRemaining[at + 1] <= bestScore) return;
+				String field = choice.getDualEncodedLinkIndex() < 0 ? choice.getField() : null;
+				if (distinct && field != null && used.containsKey(field)) continue;
+				steps++;
+				current[at] = k;
+				if (field != null) increment(field, 1);
+				search(at + 1, s);
+				if (field != null) increment(field, -1);
+			}
 		}
 
-		return size;
+		private void increment(String field, int delta) {
+			Integer count = used.get(field);
+			int n = (count == null ? 0 : count) + delta;
+			if (n == 0) used.remove(field);
+			else used.put(field, n);
+		}
 	}
 
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.match;
+
+import org.brunel.data.Field;
+
+/**
+ * The properties of a field that are used to judge how well it matches another field.
+ * These are read once per field, as reading them may require the field's statistics to be calculated,
+ * and then reused for every comparison.
+ *
+ * Scoring is done by comparing the field labels as well as the categorical preference and the number
+ * of unique values.  Continuous fields are matched using closeness of their distribution
+ * properties (skewness and kurtosis).
+ */
+class FieldFeatures {
+
+    private static final double REALLY_BAD = .000001;           //A very poor score
+
+    final String label;
+    private final int rowCount, uniqueCount;
+    private final boolean preferCategorical, date;
+    private final Double mean, skew, kurtosis;
+
+    FieldFeatures(Field field) {
+        label = field.label;
+        rowCount = field.rowCount();
+        uniqueCount = field.uniqueValuesCount();
+        preferCategorical = field.preferCategorical();
+        date = field.isDate();
+        boolean numeric = !preferCategorical;
+        mean = numeric && date ? field.numProperty("mean") : null;
+        skew = numeric ? field.numProperty("skew") : null;
+        kurtosis = numeric ? field.numProperty("kurtosis") : null;
+    }
+
+    /**
+     * Score how well a field matches this one
+     *
+     * @param other                    the candidate field
+     * @param originalDeclaredNominal  true if this field is used as nominal
+     * @return score between zero and one; higher is better
+     */
+    double score(FieldFeatures other, boolean originalDeclaredNominal) {
+        //geo-mean the two scores
+        return Math.sqrt(scoreByNameCloseness(other.label) * scoreByValueCloseness(other, originalDeclaredNominal));
+    }
+
+    //Score based on field name closeness
+    private double scoreByNameCloseness(String newName) {
+        //If we cannot match at least 75% of the characters then it probably does not matter.
+        //The common part cannot be longer than the new name, so often we need not look
+        if (label.length() == 0 || newName.length() < .75 * label.length()) return 0.1;
+
+        int lcs = longestCommonSubstringLength(label, newName);
+        double score = (double) lcs / (double) label.length();
+        return score >= .75 ? score : 0.1;
+    }
+
+    private static int longestCommonSubstringLength(String a, String b) {
+        if (a.length() == 0 || b.length() == 0)
+            return 0;
+
+        // Only the previous row of the table is needed
+        int maxLen = 0;
+        int[] previous = new int[b.length() + 1], current = new int[b.length() + 1];
+        for (int i = 1; i <= a.length(); i++) {
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                current[j] = c == b.charAt(j - 1) ? previous[j - 1] + 1 : 0;
+                if (current[j] > maxLen) maxLen = current[j];
+            }
+            int[] t = previous;
+            previous = current;
+            current = t;
+        }
+        return maxLen;
+    }
+
+    //Score based closeness of the values of the fields
+    private double scoreByValueCloseness(FieldFeatures newField, boolean originalDeclaredNominal) {
+
+        // Check for a "key" or identifier status -- if so, that's all we want to know
+        boolean originalLooksLikeKey = uniqueCount > 0.7 * rowCount && preferCategorical;
+        if (originalLooksLikeKey) {
+            double keyLikeScore = ((double) newField.uniqueCount) / newField.rowCount;
+            if (newField.preferCategorical)
+                return 0.1 * keyLikeScore;
+            else
+                return keyLikeScore;
+        }
+
+        double scoreSimilarCounts = fractionDifferent(uniqueCount, newField.uniqueCount);
+
+        if (originalDeclaredNominal) {
+            // When we actually request a nominal field, the type of the other field is less important
+            // Return the fraction difference in number unique values; that's all we care about
+            return scoreSimilarCounts;
+        }
+
+        // Categorical mismatch: We do not like it, so only 10% as good as a real categorical match
+        if (preferCategorical != newField.preferCategorical)
+            return 0.1 * scoreSimilarCounts;
+
+        // Categorical correct match!
+        if (preferCategorical)
+            return scoreSimilarCounts;
+
+        // At this point we know we are looking for a numeric match
+
+        // If they are both dates, this is good
+        if (date && newField.date) {
+            // This is a pretty good match -- make it at least 90% good match
+            // Remaining 10% is similarity of date scale
+            double meanSimilarity = propertyDiffScore(mean, newField.mean);
+            return 0.9 + 0.1 * meanSimilarity;
+        }
+
+        // We have numeric types (at least one of which is not a date) and will compare by distributions
+        // We also include a minimal factor of 0.5 because the types are good!
+
+        // Multiply a factor in to account for dates vs. non-dates
+        double typeMatch = (date == newField.date) ? 1.0 : 0.3;
+        return typeMatch * (0.5 + 0.5 * scoreByDistributionCloseness(newField));
+    }
+
+    //Will do all positive value comparisons.
+    //Assumption on skewness is that the sign does not really make a difference when choosing fields.
+    private static double fractionDifferent(double v1, double v2) {
+        double av1 = Math.abs(v1);
+        double av2 = Math.abs(v2);
+        double max = Math.max(av1, av2);
+        return 1.0 - Math.abs(av1 - av2) / max;
+    }
+
+    private static double propertyDiffScore(Double p1, Double p2) {
+        if (p1 == null || p2 == null) return Double.NaN;
+        return fractionDifferent(p1, p2);
+    }
+
+    private double scoreByDistributionCloseness(FieldFeatures newField) {
+        //Pct. differences for distribution properties -- the measures which are location-independent
+        double skewScore = propertyDiffScore(skew, newField.skew);
+        double kurtosisScore = propertyDiffScore(kurtosis, newField.kurtosis);
+
+        //Geo-mean of the measures
+        double geoMean = geoMeanNoMissing(skewScore, kurtosisScore);
+
+        //No distribution properties probably a poor choice for a continuous field
+        return Double.isNaN(geoMean) ? REALLY_BAD : geoMean;
+    }
+
+    //Skip any missing values
+    private static double geoMeanNoMissing(double... vals) {
+        double count = 0;
+        double sum = 1.0;
+
+        for (double val : vals) {
+            if (!Double.isNaN(val)) {
+                sum *= val;
+                count++;
+            }
+        }
+
+        return count > 0 ? Math.pow(sum, 1.0 / count) : Double.NaN;
+    }
+}
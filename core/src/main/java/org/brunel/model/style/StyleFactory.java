@@ -16,8 +16,9 @@
 
 package org.brunel.model.style;
 
+import org.brunel.util.BoundedCache;
+
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
 
@@ -46,36 +47,51 @@ import java.util.Map;
 
 /**
  * For handling style sheets. This uses a singleton pattern and makes sure it never has more than
- * than a fix number of cached items
+ * than a fix number of cached items. The caches are shared by all threads.
+ * The number of cached selectors can be set with the system property "brunel.style.cacheSize"
  */
 public class StyleFactory {
 
-    private static final StyleFactory INSTANCE = new StyleFactory(400);
+    private static final StyleFactory INSTANCE = new StyleFactory(Integer.getInteger("brunel.style.cacheSize", 400));
 
     public static StyleFactory instance() {
         return INSTANCE;
     }
 
     final int maxEntries;
-
-    // Adds an override to limit the growth
-    final LinkedHashMap<String, StyleSelector> selectors = new LinkedHashMap<String, StyleSelector>() {
-        protected boolean removeEldestEntry(Map.Entry<String, StyleSelector> eldest) {
-            return size() > maxEntries;
-        }
-    };
+    final BoundedCache<String, StyleSelector> selectors;        // Parsed selectors by text
+    final BoundedCache<String, StyleSheet> sheets;              // Parsed style sheets by text; never modified
 
     private StyleFactory(int maxEntries) {
         this.maxEntries = maxEntries;
+        this.selectors = new BoundedCache<>(maxEntries);
+        this.sheets = new BoundedCache<>(Math.max(1, maxEntries / 4));
+    }
+
+    public BoundedCache<String, StyleSelector> getSelectorCache() {
+        return selectors;
+    }
+
+    public BoundedCache<String, StyleSheet> getStyleSheetCache() {
+        return sheets;
     }
 
     /**
-     * Makes a style sheet, silently discarding any non-conforming syntax
+     * Makes a style sheet, silently discarding any non-conforming syntax.
+     * Parsed sheets are cached; each call returns a new copy that the caller may modify.
      *
      * @param text input style sheet
      * @return processed form
      */
     public StyleSheet makeStyleSheet(String text) {
+        StyleSheet parsed = sheets.get(text);
+        if (parsed == null) parsed = sheets.put(text, parseStyleSheet(text));
+        StyleSheet sheet = new StyleSheet();
+        sheet.add(parsed);
+        return sheet;
+    }
+
+    private StyleSheet parseStyleSheet(String text) {
         StyleSheet sheet = new StyleSheet();
         for (String s : text.split("\\}")) {
             // This should be of the form "label { a:foo" (missing last brace)
@@ -128,7 +144,7 @@ public class StyleFactory {
                 for (int i = 0; i < parts.length; i++) components[i] = makeSingleComponentSelector(parts[i].trim());
                 s = new MultiComponentSelector(components);
             }
-            selectors.put(text, s);
+            s = selectors.put(text, s);
         }
         return s;
     }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size-bounded cache that is safe to share between threads and does not lock on reads.
+ * When full, the oldest entries are removed first. The bound may be exceeded briefly while
+ * several threads add entries at the same time.
+ */
+public final class BoundedCache<K, V> {
+
+    private final int maxEntries;
+    private final ConcurrentHashMap<K, V> map = new ConcurrentHashMap<>();
+    private final Queue<K> order = new ConcurrentLinkedQueue<>();   // Keys in order of addition
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+    public BoundedCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("Cache size must be positive: " + maxEntries);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets a cached value, recording a hit or a miss
+     *
+     * @param key key to look up
+     * @return value or null if not cached
+     */
+    public V get(K key) {
+        V v = map.get(key);
+        if (v == null) misses.incrementAndGet();
+        else hits.incrementAndGet();
+        return v;
+    }
+
+    /**
+     * Adds a value, unless one is already present
+     *
+     * @param key   key to store under
+     * @param value value to store
+     * @return the value now held for the key; this is the existing one if another thread added it first
+     */
+    public V put(K key, V value) {
+        V existing = map.putIfAbsent(key, value);
+        if (existing != null) return existing;
+        order.add(key);
+        while (map.size() > maxEntries) {
+            K eldest = order.poll();
+            if (eldest == null) break;
+            map.remove(eldest);
+        }
+        return value;
+    }
+
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    public void clear() {
+        map.clear();
+        order.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String toString() {
+        return "BoundedCache[size=" + size() + "/" + maxEntries + ", hits=" + getHits() + ", misses=" + getMisses() + "]";
+    }
+}
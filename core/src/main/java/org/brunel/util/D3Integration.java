@@ -23,6 +23,7 @@ import org.brunel.action.ActionUtil;
 import org.brunel.action.Param;
 import org.brunel.build.VisualizationBuilder;
 import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.ContentReader;
 import org.brunel.build.util.DataCache;
 import org.brunel.data.Dataset;
 import org.brunel.data.io.CSV;
@@ -31,6 +32,11 @@ import org.brunel.model.VisItem;
 
 import com.google.gson.Gson;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Arrays;
+
 /**
  * Brunel integration methods provided for services and other languages.  Only primitives are used for language integration methods
  *
@@ -40,6 +46,12 @@ import com.google.gson.Gson;
 public class D3Integration {
 
 	private static final Gson gson = new Gson();
+	// Built results; null when not caching. The size can be set with the system property "brunel.result.cacheSize"
+	private static volatile BoundedCache<ResultKey, BrunelD3Result> resultCache;
+
+	static {
+		useResultCache(Integer.getInteger("brunel.result.cacheSize", 0));
+	}
 
 	/**
 	 * Create and return the Brunel results as a String containing the Brunel JSON.
@@ -86,6 +98,17 @@ public class D3Integration {
     	DataCache.store(dataKey, makeBrunelData(csv));
     }
 
+    /**
+     * Store a dataset provided as a stream of CSV in the cache with the given key.
+     * The content is parsed as it is read, so large uploads are never held in memory as text.
+     * @param dataKey a unique key name for the data
+     * @param csv the dataset as a stream of UTF-8 encoded CSV
+     * @throws IOException if the stream cannot be read
+     */
+    public static void cacheData(String dataKey, InputStream csv) throws IOException {
+    	DataCache.store(dataKey, Dataset.make(ContentReader.readCSV(csv)));
+    }
+
     /*
      * Get all dataset names from data() statements that are supplied in the given brunel.
      * @param brunel the brunel syntax
@@ -128,13 +151,48 @@ public class D3Integration {
 	 */
 
     public static BrunelD3Result createBrunelResult(String data, String brunelSrc, int width,  int height, String visId, String controlsId) {
-    			Dataset dataset = makeBrunelData(data);
-				VisualizationBuilder builder = makeD3(dataset, brunelSrc, width, height, visId, controlsId);
-				BrunelD3Result result = new BrunelD3Result();
-				result.css = builder.getStyleOverrides();
-				result.js = builder.getVisualization().toString();
-				result.controls = builder.getControls();
-				return result;
+        BuilderOptions options = makeOptions(visId, controlsId);
+        Action action = parse(brunelSrc);
+        BoundedCache<ResultKey, BrunelD3Result> cache = resultCache;
+        ResultKey key = cache == null ? null : ResultKey.make(action, data, width, height, options);
+        BrunelD3Result result = key == null ? null : cache.get(key);
+        if (result == null) {
+            result = buildResult(makeBrunelData(data), brunelSrc, action, width, height, options);
+            if (key != null) result = cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Keep previously built results so that requests for the same visualization of unchanged data do not
+     * build it again. Results are found using the Brunel (in canonical form), the CSV data, the size and the
+     * builder options, along with the version in the {@link DataCache} of any data referenced by the Brunel,
+     * so storing new data for a key, or reading it again after it has expired, means results using the old
+     * data are no longer used.
+     * Results are shared between callers and so must not be modified.
+     *
+     * @param maxEntries the number of results to keep; zero or less to turn off caching
+     */
+    public static void useResultCache(int maxEntries) {
+        resultCache = maxEntries > 0 ? new BoundedCache<ResultKey, BrunelD3Result>(maxEntries) : null;
+    }
+
+    /**
+     * The cache of built results, which can be used to monitor hits and misses
+     *
+     * @return the cache, or null if results are not being cached
+     */
+    public static BoundedCache<?, BrunelD3Result> getResultCache() {
+        return resultCache;
+    }
+
+    private static BrunelD3Result buildResult(Dataset dataset, String actionText, Action action, int width, int height, BuilderOptions options) {
+        VisualizationBuilder builder = build(dataset, actionText, action, width, height, options);
+        BrunelD3Result result = new BrunelD3Result();
+        result.css = builder.getStyleOverrides();
+        result.js = builder.getVisualization().toString();
+        result.controls = builder.getControls();
+        return result;
     }
 
 
@@ -159,12 +217,24 @@ public class D3Integration {
 
 	//Creates a D3Builder to produce the d3 output
     public static VisualizationBuilder makeD3(Dataset data, String actionText, int width, int height, String visId, String controlsId) {
+        return build(data, actionText, null, width, height, makeOptions(visId, controlsId));
+    }
+
+    // Parses the Brunel, reporting errors the same way as building does
+    private static Action parse(String actionText) {
+        try {
+            return Action.parse(actionText);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new IllegalArgumentException("Could not execute Brunel: " + actionText, ex);
+        }
+    }
+
+    // Builds the visualization; the action is parsed from the text if not already available
+    private static VisualizationBuilder build(Dataset data, String actionText, Action action, int width, int height, BuilderOptions options) {
     	try {
-            BuilderOptions options = BuilderOptions.makeFromENV();
-            options.visIdentifier = visId;
-            options.controlsIdentifier = controlsId;
             VisualizationBuilder builder = VisualizationBuilder.make(options);
-            VisItem item = makeVisItem(data, actionText);
+            VisItem item = makeVisItem(data, action == null ? Action.parse(actionText) : action);
             builder.build(item, width, height);
             return builder;
     	} catch (Exception ex) {
@@ -173,6 +243,38 @@ public class D3Integration {
         }
     }
 
+    private static BuilderOptions makeOptions(String visId, String controlsId) {
+        BuilderOptions options = BuilderOptions.makeFromENV();
+        options.visIdentifier = visId;
+        options.controlsIdentifier = controlsId;
+        return options;
+    }
+
+    /**
+     * Builds the d3 output, streaming the Javascript to the target as it is generated.
+     * This avoids holding the whole script (and its data tables) in memory as a single String.
+     * @param data the data to use (may be null if the Brunel defines its own data)
+     * @param actionText the Brunel syntax
+     * @param width the desired width for the visualization
+     * @param height the desired height for the visualization
+     * @param visId an identifier used in the SVG tag that will contain the visualization
+     * @param controlsId an identifier for the controls
+     * @param target where to write the Javascript; it is flushed but not closed
+     * @return the builder, which can be queried for styles and controls (but not the script itself)
+     * @throws IOException if the target could not be written to
+     */
+    public static VisualizationBuilder writeD3(Dataset data, String actionText, int width, int height, String visId, String controlsId, Writer target) throws IOException {
+        VisualizationBuilder builder = VisualizationBuilder.make(makeOptions(visId, controlsId));
+        VisItem item;
+        try {
+            item = makeVisItem(data, Action.parse(actionText));
+        } catch (Exception ex) {
+            throw new IllegalArgumentException("Could not execute Brunel: " + actionText, ex);
+        }
+        builder.build(item, width, height, target);
+        return builder;
+    }
+
     //Create a Dataset instance given CSV
     private static Dataset makeBrunelData(String data) {
     	if (data == null || data.isEmpty()) return null;
@@ -186,12 +288,65 @@ public class D3Integration {
 
 
     //Create the VisItem instance for the given Brunel
-    private static VisItem makeVisItem(Dataset brunel, String actionText) {
-        Action action = Action.parse(actionText);
+    private static VisItem makeVisItem(Dataset brunel, Action action) {
         if (brunel == null) return action.apply();
         return action.apply(brunel);
     }
 
+    /* Identifies a built result */
+    private static final class ResultKey {
+        private final Action action;
+        private final String data;
+        private final String[] dataKeys;
+        private final long[] dataVersions;
+        private final int width, height;
+        private final BuilderOptions options;
+
+        private ResultKey(Action action, String data, String[] dataKeys, long[] dataVersions, int width, int height, BuilderOptions options) {
+            this.action = action;
+            this.data = data == null ? "" : data;
+            this.dataKeys = dataKeys;
+            this.dataVersions = dataVersions;
+            this.width = width;
+            this.height = height;
+            this.options = options;
+        }
+
+        /* Returns null when the result cannot be cached, because the data is always read afresh, cannot be read or is no longer cached */
+        static ResultKey make(Action action, String data, int width, int height, BuilderOptions options) {
+            Param[] params = ActionUtil.dataParameters(action);
+            String[] keys = new String[params.length];
+            long[] versions = new long[params.length];
+            for (int i = 0; i < params.length; i++) {
+                keys[i] = params[i].asString();
+                if (keys[i].startsWith("refresh:")) return null;
+                // Load the data first, so the version is that of the data the result is built from
+                try {
+                    DataCache.get(keys[i]);
+                } catch (IOException e) {
+                    return null;
+                }
+                versions[i] = DataCache.version(keys[i]);
+                if (versions[i] == 0) return null;                  // Evicted or expired since it was loaded
+            }
+            return new ResultKey(action, data, keys, versions, width, height, options);
+        }
+
+        public int hashCode() {
+            int result = 31 * action.hashCode() + data.hashCode();
+            result = 31 * result + Arrays.hashCode(dataVersions);
+            result = 31 * result + 17 * width + height;
+            return 31 * result + options.hashCode();
+        }
 
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ResultKey)) return false;
+            ResultKey that = (ResultKey) o;
+            return width == that.width && height == that.height && action.equals(that.action)
+                    && Arrays.equals(dataVersions, that.dataVersions) && Arrays.equals(dataKeys, that.dataKeys)
+                    && data.equals(that.data) && options.equals(that.options);
+        }
+    }
 
 }
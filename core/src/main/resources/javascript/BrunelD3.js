@@ -91,12 +91,35 @@ var BrunelD3 = (function () {
 
     // Create a dataset from rows. Each object has three parts - names, types, rows
     // The types are 'string', 'date',  'numeric' or "synthetic" (one of #row, #selection, #count)
+    // When written in columnar form, 'columns' and 'count' replace the rows
     function makeDataset(data) {
-        var d = BrunelData.Dataset.makeTyped(data.names, data.options, data.rows);
+        var d = data.columns ? BrunelData.Dataset.makeTypedColumns(data.names, data.options,
+            data.columns.map(function (c) { return decodeColumn(c, data.count) }))
+            : BrunelData.Dataset.makeTyped(data.names, data.options, data.rows);
         d.set("summarized", data.summarized);        // Preserve the status in the info
         return d;
     }
 
+    // Decode a single column: either plain values, a dictionary with codes, or differences from the previous value
+    function decodeColumn(c, n) {
+        var i, v = 0, result;
+        if (c.values) return c.values;
+        result = new Array(n);
+        if (c.dict) {
+            for (i = 0; i < n; i++) result[i] = c.codes[i] < 0 ? null : c.dict[c.codes[i]];
+        } else {
+            for (i = 0; i < n; i++) {
+                if (c.delta[i] == null) {
+                    result[i] = null;
+                } else {
+                    v += c.delta[i];
+                    result[i] = c.date ? new Date(v) : v;
+                }
+            }
+        }
+        return result;
+    }
+
 
     /**
      * Returns the bounding box for an item, or null if the bounding box is invalid.
@@ -24,6 +24,7 @@ import org.junit.Test;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 public class ParseTest {
@@ -178,6 +179,28 @@ public class ParseTest {
         tokens = new Parser().tokenize("aaaa(bb:ccc)");
         assertEquals("4,1,2,1,3,1", lengths(tokens));
 
+        tokens = new Parser().tokenize("x(a) 'q'b");
+        assertEquals("[x(?), ((?), a(?), )(?), 'q'(?), b(?)]", tokens.toString());
+        assertEquals(4, tokens.get(3).end);
+        assertEquals(5, tokens.get(4).start);
+        assertEquals(8, tokens.get(5).start);
+    }
+
+    @Test
+    public void testParsedActionsShared() {
+        String text = "data('shared') x(a) y(b) style('symbol:circle') interaction(select, filter)";
+        Action action = Action.parse(text);
+        assertSame(action, Action.parse(text));
+
+        // Changing the data or simplifying gives new actions and leaves the shared one alone
+        assertEquals("data('p-shared') x(a) y(b) style('symbol:circle') interaction(select, filter)",
+                ActionUtil.prefixAllDataStatements(action, "p-"));
+        assertEquals("data('other') x(a) y(b) style('symbol:circle') interaction(select, filter)",
+                ActionUtil.replaceDataParameters(action, Param.makeString("other")).toString());
+        assertEquals("data('shared') x(a) y(b) style('symbol:circle') interaction(filter, select)",
+                action.simplify().toString());
+        assertEquals("data('shared') x(a) y(b) style('symbol:circle') interaction(select, filter)", action.toString());
+        assertSame(action, Action.parse(text));
     }
 
     private String lengths(List<BrunelToken> tokens) {
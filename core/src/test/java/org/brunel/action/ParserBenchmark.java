@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.action;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times tokenizing and parsing the Brunel in the gallery, with and without the cache of parsed actions.
+ * Run as an application; the optional arguments are the gallery file and the number of passes over it.
+ */
+public class ParserBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : "../etc/src/main/resources/org/brunel/app/gallery.txt";
+        int passes = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        List<String> scripts = readBrunel(file);
+
+        for (int run = 0; run < 3; run++) {
+            long t0 = System.nanoTime();
+            int tokens = 0;
+            for (int i = 0; i < passes; i++)
+                for (String s : scripts) tokens += new Parser().tokenize(s).size();
+            long t1 = System.nanoTime();
+            for (int i = 0; i < passes; i++)
+                for (String s : scripts) Parser.parse(s);
+            long t2 = System.nanoTime();
+            for (int i = 0; i < passes; i++)
+                for (String s : scripts) Action.parse(s);
+            long t3 = System.nanoTime();
+            double n = passes * scripts.size() * 1000.0;           // For microseconds per script
+            System.out.printf("%d scripts (%d tokens): tokenize %.2f us, parse %.2f us, cached parse %.3f us%n",
+                    scripts.size(), tokens / passes, (t1 - t0) / n, (t2 - t1) / n, (t3 - t2) / n);
+        }
+    }
+
+    // The brunel entries start with '#brunel' and continue on indented lines
+    private static List<String> readBrunel(String file) throws IOException {
+        List<String> scripts = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            StringBuilder current = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    if (current != null) scripts.add(current.toString().trim());
+                    current = line.startsWith("#brunel") ? new StringBuilder(line.substring(7)) : null;
+                } else if (current != null && !line.trim().isEmpty()) {
+                    current.append(' ').append(line.trim());
+                }
+            }
+            if (current != null) scripts.add(current.toString().trim());
+        }
+        return scripts;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.data;
+
+import org.brunel.action.Action;
+import org.brunel.build.VisualizationBuilder;
+import org.brunel.build.util.BuilderOptions;
+import org.brunel.build.util.BuilderOptions.DataEncoding;
+import org.brunel.build.util.BuilderOptions.DataMethod;
+import org.brunel.data.Dataset;
+import org.brunel.data.io.CSV;
+import org.brunel.model.VisItem;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the written data tables
+ */
+public class TestDataTableWriter {
+
+    private static final String CSV_DATA = "A,B,C,D\n"
+            + "1,0.5,red,2001-01-01\n"
+            + "2,1.5,green,2001-01-02\n"
+            + "4,2.25,red,\n"
+            + ",3.5,red,2001-01-05\n";
+
+    @Test
+    public void testRowsByDefault() {
+        String table = dataTable(new BuilderOptions());
+        assertTrue(table.contains("rows: ["));
+        assertTrue(table.contains("[1.0, 0.5, 'red', '2001-01-01T00:00:00+0000']"));
+    }
+
+    @Test
+    public void testColumnar() {
+        BuilderOptions options = new BuilderOptions();
+        options.dataEncoding = DataEncoding.columnar;
+        String table = dataTable(options);
+        assertTrue(table.contains("count: 4,"));
+        assertTrue(table.contains("{delta: [1, 1, 2, null]}"));
+        assertTrue(table.contains("{values: [0.5, 1.5, 2.25, 3.5]}"));
+        assertTrue(table.contains("{dict: ['red', 'green'],"));
+        assertTrue(table.contains("codes: [0, 1, 0, 0]}"));
+        assertTrue(table.contains("{date: true, delta: [978307200000, 86400000, null, 259200000]}"));
+        assertEquals(-1, table.indexOf("rows:"));
+    }
+
+    private String dataTable(BuilderOptions options) {
+        options.includeData = DataMethod.full;
+        Dataset data = Dataset.make(CSV.read(CSV_DATA));
+        VisItem item = Action.parse("x(A) y(B) color(C) tooltip(D)").apply(data);
+        VisualizationBuilder builder = VisualizationBuilder.make(options);
+        builder.build(item, 300, 200);
+        String script = builder.getVisualization();
+        int start = script.indexOf("var table1");
+        return script.substring(start, script.indexOf("};", start));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.build.data;
+
+import org.brunel.action.Action;
+import org.brunel.data.CannedData;
+import org.brunel.data.Data;
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.io.CSV;
+import org.brunel.model.VisElement;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertTrue;
+
+/**
+ * Tests the planned transforms give the same results as running each step in turn
+ */
+public class TestTransformPlan {
+
+    private final Dataset bank = Dataset.make(CSV.read(CannedData.bank));
+
+    // A list field to split with 'each', and fields with missing values so they are filtered
+    private final Dataset tagged = makeTagged();
+
+    @Test
+    public void testMatchesSequentialSteps() {
+        check("x(salary) y(salbegin)");
+        check("x(salary) y(salbegin) top(jobtime:5)");
+        check("x(jobcat) y(salary) sum(salary) bottom(educ:20)");
+        check("x(jobcat) y(salary) mean(salary) inner(salbegin:80)");
+        check("x(salbegin) y(salary) bin(salbegin) mean(salary) top(educ:30)");
+        check("bar x(jobcat) y(salary, salbegin) sum(salary, salbegin) stack");
+        check("line x(bdate) y(salary) sort(salary) tooltip(#all)");
+    }
+
+    @Test
+    public void testFiltersAroundEach() {
+        // Filters on other fields run before the rows are split
+        check("x(x) y(y) each(tags) color(tags)", tagged);
+        assertPlan("x(x) y(y) each(tags) color(tags)", "filter[x valid; y valid] -> each[tags]");
+
+        // Ranked filters depend on the rows after the split, and rank the rows the other clauses see,
+        // so the whole filter stays after the split
+        check("x(x) y(y) each(tags) color(tags) top(y:3)", tagged);
+        check("x(x) y(y) each(tags) color(tags) top(y:2)", tagged);
+        assertPlan("x(x) y(y) each(tags) color(tags) top(y:2)", "each[tags] -> filter[x valid; y valid; y ranked");
+
+        // Filters on the split field must see the split values
+        check("x(tags) y(y) each(tags)", tagged);
+        assertPlan("x(tags) y(y) each(tags)", "filter[y valid] -> each[tags] -> filter[tags valid]");
+    }
+
+    @Test
+    public void testPlanShape() {
+        VisElement vis = makeVis("x(jobcat) y(salary) sum(salary) bottom(educ:20)");
+        String plan = TransformPlan.make(vis.getDataset(), new TransformParameterBuilder(vis).make()).toString();
+        assertTrue(plan, plan.contains("filterSummarize["));
+        assertTrue(plan, plan.startsWith("fields["));
+
+        // Bins need the filtered data, so cannot be fused
+        vis = makeVis("x(salbegin) y(salary) bin(salbegin) mean(salary) top(educ:30)");
+        plan = TransformPlan.make(vis.getDataset(), new TransformParameterBuilder(vis).make()).toString();
+        assertTrue(plan, plan.contains("filter[") && plan.contains("transform[") && plan.contains("summarize["));
+
+        // Cannot prune without knowing the fields used
+        TransformParameters params = new TransformParameterBuilder(vis).make();
+        params.usedCommand = null;
+        plan = TransformPlan.make(vis.getDataset(), params).toString();
+        assertTrue(plan, !plan.contains("fields["));
+    }
+
+    @Test
+    public void testPrunesUnusedFields() {
+        VisElement vis = makeVis("x(salary) y(salbegin) top(jobtime:5)");
+        Dataset result = TransformedData.transform(vis.getDataset(), new TransformParameterBuilder(vis).make());
+        assertNotNull(result.field("salary"));
+        assertNotNull(result.field("jobtime"));
+        assertEquals(null, result.field("minority"));
+    }
+
+    @Test
+    public void testMemoSharesResults() {
+        TransformMemo memo = new TransformMemo();
+        TransformedData a = TransformedData.make(makeVis("bar x(jobcat) y(salary) mean(salary)"), memo);
+        TransformedData b = TransformedData.make(makeVis("text x(jobcat) y(salary) mean(salary)"), memo);
+        assertEquals(1, memo.getHits());
+        assertTrue(a.fields[0] == b.fields[0]);
+
+        // Different data never matches
+        TransformedData c = TransformedData.make(makeVis("bar x(jobcat) y(salary) mean(salary)", Dataset.make(CSV.read(CannedData.bank))), memo);
+        assertEquals(1, memo.getHits());
+        assertTrue(a.fields[0] != c.fields[0]);
+    }
+
+    @Test
+    public void testMemoReusesPrefix() {
+        TransformMemo memo = new TransformMemo();
+        VisElement vis = makeVis("x(jobcat) y(salary) sum(salary) sort(salary)");
+        TransformedData.make(makeVis("x(jobcat) y(salary) sum(salary)"), memo);
+        TransformedData sorted = TransformedData.make(vis, memo);
+        assertEquals(1, memo.getHits());
+
+        Dataset expected = TransformedData.transform(vis.getDataset(), new TransformParameterBuilder(vis).make());
+        assertEquals(expected.rowCount(), sorted.rowCount());
+        for (int i = 0; i < expected.rowCount(); i++)
+            assertEquals(expected.field("salary").value(i), sorted.field("salary").value(i));
+    }
+
+    @Test
+    public void testSharedBetweenBuilds() {
+        TransformMemo.useSharedCache(10);
+        try {
+            TransformedData a = TransformedData.make(makeVis("x(jobcat) y(salary) mean(salary)"), new TransformMemo());
+            TransformMemo memo = new TransformMemo();
+            TransformedData b = TransformedData.make(makeVis("x(jobcat) y(salary) mean(salary)"), memo);
+            assertEquals(1, memo.getHits());
+            assertTrue(a.fields[0] == b.fields[0]);
+        } finally {
+            TransformMemo.useSharedCache(0);
+        }
+    }
+
+    private void check(String brunel) {
+        check(brunel, bank);
+    }
+
+    private void check(String brunel, Dataset data) {
+        VisElement vis = makeVis(brunel, data);
+        Dataset source = vis.getDataset();
+        TransformParameters p = new TransformParameterBuilder(vis).make();
+
+        Dataset expected = source.addConstants(p.constantsCommand).each(p.eachCommand).filter(p.filterCommand)
+                .transform(p.transformCommand).summarize(p.summaryCommand).series(p.seriesCommand)
+                .setRowCount(p.rowCountCommand).sort(p.sortCommand).sortRows(p.sortRowsCommand).stack(p.stackCommand);
+        Dataset actual = TransformedData.transform(source, p);
+
+        assertEquals(brunel, expected.rowCount(), actual.rowCount());
+        for (String name : vis.usedFields(true)) {
+            if (name.equals("#all")) continue;
+            Field e = expected.field(name, true);
+            if (e == null) continue;
+            Field a = actual.field(e.name);
+            assertNotNull(brunel + " : " + name, a);
+            for (int i = 0; i < e.rowCount(); i++)
+                assertEquals(brunel + " : " + name + " @ " + i, e.value(i), a.value(i));
+        }
+    }
+
+    private void assertPlan(String brunel, String expected) {
+        VisElement vis = makeVis(brunel, tagged);
+        String plan = TransformPlan.make(vis.getDataset(), new TransformParameterBuilder(vis).make()).toString();
+        assertTrue(plan, plan.contains(expected));
+    }
+
+    private static Dataset makeTagged() {
+        Field[] fields = CSV.read("tags,x,y\n\"a,b\",1,10\nb,,20\n\"a,c\",3,\n,4,40\n\"b,c\",5,50\n"
+                + "c,6,60\n\"a,b,c\",7,70\n,,80\na,9,90\n\"c,a\",10,5\n");
+        fields[0] = Data.toList(fields[0]);
+        return Dataset.make(fields);
+    }
+
+    private VisElement makeVis(String brunel) {
+        return makeVis(brunel, bank);
+    }
+
+    private VisElement makeVis(String brunel, Dataset data) {
+        return Action.parse(brunel).apply(data).getSingle().makeCanonical();
+    }
+}
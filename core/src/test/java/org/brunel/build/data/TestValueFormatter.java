@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.build.data;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the value formatting matches the standard conversions
+ */
+public class TestValueFormatter {
+
+    private final ValueFormatter formatter = new ValueFormatter();
+
+    @Test
+    public void testNumbersMatchDoubleToString() {
+        double[] special = {0.0, -0.0, 1.0, -1.0, 0.5, 9999999.0, 1e7, -1e7, 123456789.0, 1e-3, 1e-4, 0.1 + 0.2,
+                Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (double d : special) assertNumber(d);
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            assertNumber(random.nextInt(20000000) - 10000000);
+            assertNumber(random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10));
+        }
+    }
+
+    @Test
+    public void testQuotingMatchesDataQuote() {
+        String[] strings = {"", "plain", "it's", "say \"hi\"", "both ' and \"", "line\nbreak", "tab\tand\rreturn",
+                "back\\slash", "caf\u00e9", "\u00ff\u2603\uffff"};
+        for (String s : strings) {
+            StringBuilder b = new StringBuilder();
+            formatter.appendQuoted(b, s);
+            assertEquals(Data.quote(s), b.toString());
+        }
+    }
+
+    @Test
+    public void testDatesFormattedPerValue() {
+        Field f = Data.toDate(Fields.makeColumnField("d", null, new Object[]{"2001-02-03", "2001-02-03", null, "2001-02-04"}), null);
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < f.rowCount(); i++) {
+            if (i > 0) b.append(',');
+            formatter.append(b, f, f.value(i));
+        }
+        assertEquals("'2001-02-03T00:00:00+0000','2001-02-03T00:00:00+0000',null,'2001-02-04T00:00:00+0000'", b.toString());
+    }
+
+    private void assertNumber(double d) {
+        StringBuilder b = new StringBuilder();
+        formatter.appendNumber(b, d);
+        assertEquals(Double.toString(d), b.toString());
+    }
+}
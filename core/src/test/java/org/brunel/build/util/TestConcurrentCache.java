@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.build.util;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.io.CSV;
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertSame;
+
+/**
+ * Tests for the concurrent dataset cache
+ */
+public class TestConcurrentCache {
+
+    private final Dataset a = Dataset.make(CSV.read("x,y\n1,a\n2,b"));
+    private final Dataset b = Dataset.make(CSV.read("x,y\n3,c\n4,d"));
+    private final Dataset c = Dataset.make(CSV.read("x,y\n5,e\n6,f"));
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        long size = a.expectedSize();
+        ConcurrentCache cache = new ConcurrentCache(size * 2 + size / 2, 0);
+        cache.store("a", a);
+        cache.store("b", b);
+        assertSame(a, cache.retrieve("a"));         // Now 'b' is the least recently used
+        cache.store("c", c);
+
+        assertNull(cache.retrieve("b"));
+        assertSame(a, cache.retrieve("a"));
+        assertSame(c, cache.retrieve("c"));
+        assertEquals(2, cache.size());
+        assertEquals(a.expectedSize() + c.expectedSize(), cache.getEstimatedMemoryUse());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        ConcurrentCache cache = new ConcurrentCache();
+        cache.store("a", a);
+        cache.store("a", b);
+        assertSame(b, cache.retrieve("a"));
+        assertEquals(b.expectedSize(), cache.getEstimatedMemoryUse());
+        cache.remove("a");
+        assertNull(cache.retrieve("a"));
+        assertEquals(0, cache.getEstimatedMemoryUse());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testTimeToLive() throws InterruptedException {
+        ConcurrentCache cache = new ConcurrentCache();
+        cache.store("a", a, 1);
+        cache.store("b", b);
+        Thread.sleep(20);
+        assertNull(cache.retrieve("a"));
+        assertSame(b, cache.retrieve("b"));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(b.expectedSize(), cache.getEstimatedMemoryUse());
+    }
+
+    @Test
+    public void testLargeEntryIsKept() {
+        ConcurrentCache cache = new ConcurrentCache(1, 0);
+        cache.store("a", a);
+        cache.store("b", b);
+        assertNull(cache.retrieve("a"));
+        assertSame(b, cache.retrieve("b"));
+    }
+}
@@ -19,10 +19,23 @@ package org.brunel.build.util;
 import org.brunel.data.Dataset;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertSame;
+import static junit.framework.TestCase.fail;
 
 /**
- * Tests for reading raw data
+ * Tests for reading raw data and local files
  */
 public class TestRawData {
 
@@ -47,4 +60,56 @@ public class TestRawData {
         assertEquals("hello ", d.field("b").value(1));
 
     }
+
+    @Test
+    public void testLocalFile() throws Exception {
+        File file = File.createTempFile("brunel", ".csv");
+        try {
+            Files.write(file.toPath(), "a,b\n1,h\u00e9llo\n2,\"x,y\"\n".getBytes(StandardCharsets.UTF_8));
+            Dataset a = DataCache.get(file.toURI().toString());
+            assertEquals(2, a.rowCount());
+            assertEquals(2.0, a.field("a").value(1));
+            assertEquals("h\u00e9llo", a.field("b").value(0));
+            assertEquals("x,y", a.field("b").value(1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testConcurrentLoadsShareResult() throws Exception {
+        File file = File.createTempFile("brunel", ".csv");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            StringBuilder b = new StringBuilder("a,b\n");
+            for (int i = 0; i < 20000; i++) b.append(i).append(",x").append(i % 10).append('\n');
+            Files.write(file.toPath(), b.toString().getBytes(StandardCharsets.UTF_8));
+            final String key = file.toURI().toString();
+            List<Future<Dataset>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                results.add(executor.submit(new Callable<Dataset>() {
+                    public Dataset call() throws Exception {
+                        return DataCache.get(key);
+                    }
+                }));
+            Dataset first = results.get(0).get();
+            assertEquals(20000, first.rowCount());
+            for (Future<Dataset> result : results) assertSame(first, result.get());
+        } finally {
+            executor.shutdown();
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMissingFileFails() throws Exception {
+        File file = File.createTempFile("brunel", ".csv");
+        file.delete();
+        try {
+            DataCache.get(file.toURI().toString());
+            fail("Expected an error for a missing file");
+        } catch (IOException expected) {
+            // The failure is passed back to the caller
+        }
+    }
 }
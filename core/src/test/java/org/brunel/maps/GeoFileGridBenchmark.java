@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.maps;
+
+import org.brunel.geom.Point;
+import org.brunel.geom.Poly;
+
+import java.util.Random;
+
+/**
+ * Compares finding the files that cover points by testing every file against using the spatial index.
+ * Run as an application; the optional argument is the number of points.
+ */
+public class GeoFileGridBenchmark {
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        GeoData data = GeoData.instance();
+        Random random = new Random(1);
+        Point[] points = new Point[n];
+        for (int i = 0; i < n; i++)
+            points[i] = new Point(random.nextDouble() * 360 - 180, random.nextDouble() * 160 - 80);
+        Poly poly = new Poly(points);
+
+        for (int run = 0; run < 3; run++) {
+            long t0 = System.nanoTime();
+            int scanned = GeoMapping.mapBoundsToFiles(poly, data.getGeoFiles()).size();
+            long t1 = System.nanoTime();
+            int indexed = data.mapPointsToFiles(poly).size();
+            long t2 = System.nanoTime();
+            System.out.printf("%d points: scan %.1f ms (%d files), index %.1f ms (%d files)%n",
+                    n, (t1 - t0) / 1e6, scanned, (t2 - t1) / 1e6, indexed);
+        }
+    }
+}
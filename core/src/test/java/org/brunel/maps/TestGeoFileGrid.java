@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.maps;
+
+import org.brunel.geom.Point;
+import org.brunel.geom.Poly;
+import org.brunel.util.MappedLists;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the spatial index for feature files gives the same results as checking every file
+ */
+public class TestGeoFileGrid {
+
+    @Test
+    public void testMatchesFullScan() {
+        GeoData data = GeoData.instance();
+        Random random = new Random(17);
+        for (int trial = 0; trial < 5; trial++) {
+            // Clusters of points in different regions, including some outside all files
+            double cx = random.nextDouble() * 360 - 180, cy = random.nextDouble() * 160 - 80;
+            double spread = 1 + random.nextDouble() * 60;
+            Point[] points = new Point[500];
+            for (int i = 0; i < points.length; i++)
+                points[i] = new Point(cx + random.nextGaussian() * spread, cy + random.nextGaussian() * spread);
+            Poly poly = new Poly(points);
+            assertSame(GeoMapping.mapBoundsToFiles(poly, data.getGeoFiles()), data.mapPointsToFiles(poly));
+        }
+    }
+
+    @Test
+    public void testKnownPoints() {
+        GeoData data = GeoData.instance();
+        Poly poly = new Poly(new Point(2.35, 48.86), new Point(-74.0, 40.7), new Point(0, -89.9));
+        assertSame(GeoMapping.mapBoundsToFiles(poly, data.getGeoFiles()), data.mapPointsToFiles(poly));
+        assertEquals(0, data.mapPointsToFiles(new Poly()).size());
+    }
+
+    private void assertSame(MappedLists<GeoFile, Object> expected, MappedLists<GeoFile, Object> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (GeoFile f : expected.keySet())
+            assertEquals(f.name, expected.get(f), actual.get(f));
+    }
+}
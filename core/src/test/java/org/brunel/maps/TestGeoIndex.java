@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.brunel.maps;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the binary index of geographic names
+ */
+public class TestGeoIndex {
+
+    @Test
+    public void testBuiltIndex() throws Exception {
+        GeoIndex index = new GeoIndex(ByteBuffer.wrap(GeoIndex.buildFromText()));
+        assertTrue(index.size() > 50000);
+        assertEquals(GeoData.instance().getGeoFiles().length, index.files().length);
+
+        boolean found = false;
+        for (GeoData.Feature f : index.get("france"))
+            if (f.file.name.equals("WesternEurope") && f.id == 77) found = true;
+        assertTrue(found);
+
+        // Names with non-ASCII characters and variants with accents removed
+        assertEquals(index.get("badghis").get(0).id, index.get("ولایت بادغیس").get(0).id);
+        assertTrue(index.get("bamian") != null);
+
+        assertNull(index.get("nowhere at all"));
+    }
+
+    @Test
+    public void testLabelsLoadedWhenNeeded() {
+        GeoData data = GeoData.instance();
+        int count = 0;
+        for (GeoFile f : data.getGeoFiles()) count += data.labelsIn(f).size();
+        assertTrue(count > 1000);
+    }
+}
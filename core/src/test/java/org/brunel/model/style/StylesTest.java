@@ -53,6 +53,48 @@ public class StylesTest {
         for (int i = 100; i < 500; i++) assertTrue(factory.selectors.containsKey("p" + i));
     }
 
+    @Test
+    public void testStyleSheetCaching() {
+        StyleFactory factory = StyleFactory.instance();
+        String text = "cached.sheet {x:1} .other {y:2}";
+        long misses = factory.getStyleSheetCache().getMisses();
+        StyleSheet a = factory.makeStyleSheet(text);
+        StyleSheet b = factory.makeStyleSheet(text);
+        assertEquals(misses + 1, factory.getStyleSheetCache().getMisses());
+        assertTrue(factory.getStyleSheetCache().containsKey(text));
+
+        // Each call has its own copy, so changes to one do not affect the other
+        assertTrue(a != b);
+        a.clear();
+        assertTrue(a.isEmpty());
+        assertEquals(factory.makeStyleSheet(text).toString(), b.toString());
+    }
+
+    @Test
+    public void testConcurrentSelectors() throws Exception {
+        final StyleFactory factory = StyleFactory.instance();
+        Thread[] threads = new Thread[4];
+        final Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            String text = "q" + (i % 700) + ".c";
+                            assertEquals(text, factory.makeSelectors(text)[0].toString());
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(null, failure[0]);
+        assertTrue(factory.selectors.size() <= factory.maxEntries + threads.length);
+    }
+
     @Test
     public void testHierarchyItemParsing() {
         StyleFactory factory = StyleFactory.instance();
@@ -20,6 +20,14 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import org.brunel.build.util.ConcurrentCache;
+import org.brunel.build.util.DataCache;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
 public class D3IntegrationTest {
 
 	private static final String csv = "A,B,C\n1,2,3\n3,4,5";
@@ -32,6 +40,99 @@ public class D3IntegrationTest {
 		assertNotNull(json);
 	}
 	
+	@Test
+	public void testStreamedScriptMatches() throws Exception {
+		StringBuilder big = new StringBuilder("A,B,C\n");
+		for (int i = 0; i < 500; i++) big.append(i).append(',').append(i * 0.5).append(",name").append(i % 7).append('\n');
+		D3Integration.cacheData("streamed", big.toString());
+		String action = "data('streamed') x(A) y(B) color(C) tooltip(#all)";
+
+		String expected = D3Integration.makeD3(null, action, 300, 200, "visid", "controls").getVisualization();
+		StringWriter target = new StringWriter();
+		assertNull(D3Integration.writeD3(null, action, 300, 200, "visid", "controls", target).getVisualization());
+		assertEquals(expected, target.toString());
+	}
+
+	@Test
+	public void testStreamingDoesNotFlushPerRow() throws Exception {
+		StringBuilder big = new StringBuilder("A,B\n");
+		for (int i = 0; i < 2000; i++) big.append(i).append(',').append(i % 13).append('\n');
+		D3Integration.cacheData("flushed", big.toString());
+
+		final int[] flushes = new int[1];
+		StringWriter target = new StringWriter() {
+			public void flush() {
+				flushes[0]++;
+			}
+		};
+		D3Integration.writeD3(null, "data('flushed') x(A) y(B)", 300, 200, "visid", "controls", target);
+		assertTrue(target.toString().contains("1999"));
+		assertTrue("flushed " + flushes[0] + " times", flushes[0] < 10);
+	}
+
+	@Test
+	public void testResultCache() {
+		D3Integration.useResultCache(10);
+		try {
+			D3Integration.cacheData("cached", csv);
+			BrunelD3Result first = D3Integration.createBrunelResult(null, "data('cached') x(A) y(B)", 300, 200, "visid", "controls");
+			assertSame(first, D3Integration.createBrunelResult(null, "data('cached')  x(A)   y(B)", 300, 200, "visid", "controls"));
+			assertNotSame(first, D3Integration.createBrunelResult(null, "data('cached') x(A) y(B)", 301, 200, "visid", "controls"));
+			assertNotSame(first, D3Integration.createBrunelResult(null, "data('cached') x(A) y(B)", 300, 200, "other", "controls"));
+			assertEquals(1, D3Integration.getResultCache().getHits());
+
+			// Replacing the data means the result is built again
+			D3Integration.cacheData("cached", "A,B,C\n7,8,9");
+			BrunelD3Result second = D3Integration.createBrunelResult(null, "data('cached') x(A) y(B)", 300, 200, "visid", "controls");
+			assertNotSame(first, second);
+			assertTrue(second.js.contains("7"));
+			assertSame(second, D3Integration.createBrunelResult(null, "data('cached') x(A) y(B)", 300, 200, "visid", "controls"));
+		} finally {
+			D3Integration.useResultCache(0);
+		}
+		assertNull(D3Integration.getResultCache());
+	}
+
+	@Test
+	public void testResultCacheReportsSyntaxErrors() {
+		D3Integration.useResultCache(10);
+		try {
+			D3Integration.createBrunelResult(null, "x(A) y(", 300, 200, "visid", "controls");
+			fail("Expected a syntax error");
+		} catch (IllegalArgumentException expected) {
+			assertTrue(expected.getMessage().startsWith("Could not execute Brunel: "));
+		} finally {
+			D3Integration.useResultCache(0);
+		}
+	}
+
+	@Test
+	public void testResultCacheReloadsExpiredData() throws Exception {
+		File file = File.createTempFile("brunel", ".csv");
+		ConcurrentCache data = DataCache.getLocalCache();
+		long timeToLive = data.getTimeToLive();
+		D3Integration.useResultCache(10);
+		try {
+			data.setTimeToLive(50);
+			Files.write(file.toPath(), "A,B\n12345,1\n".getBytes(StandardCharsets.UTF_8));
+			String action = "data('" + file.toURI() + "') x(A) y(B)";
+			BrunelD3Result first = D3Integration.createBrunelResult(null, action, 300, 200, "visid", "controls");
+			assertSame(first, D3Integration.createBrunelResult(null, action, 300, 200, "visid", "controls"));
+
+			// Once the data expires it is read again, and the result is built from the new content
+			Files.write(file.toPath(), "A,B\n67890,1\n".getBytes(StandardCharsets.UTF_8));
+			Thread.sleep(100);
+			BrunelD3Result second = D3Integration.createBrunelResult(null, action, 300, 200, "visid", "controls");
+			assertNotSame(first, second);
+			assertTrue(second.js.contains("67890"));
+			assertFalse(second.js.contains("12345"));
+		} finally {
+			data.setTimeToLive(timeToLive);
+			D3Integration.useResultCache(0);
+			file.delete();
+		}
+	}
+
 	@Test
 	public void testDatanames() {
 		String brunel = "data('a') x(x) | data('b') x(x) y(y) + data('c') bubble | data('a') bar";
@@ -265,6 +265,57 @@ public class Data {
     return ((Comparable) a).compareTo(b);
   }
 
+  /**
+   * Compares numbers in the same order as Double.compare (so -0 is before 0 and NaN is last),
+   * written with plain comparisons so that it also translates to Javascript
+   *
+   * @param a first number
+   * @param b second number
+   * @return negative, zero or positive as a is before, the same as, or after b
+   */
+  public static int compareNumbers(double a, double b) {
+    if (a < b) return -1;
+    if (a > b) return 1;
+    if (a == b) {
+      if (a != 0) return 0;
+      double p = 1 / a, q = 1 / b;                        // Distinguishes -0 from 0
+      return p < q ? -1 : (p > q ? 1 : 0);
+    }
+    boolean p = a != a, q = b != b;                       // NaN is not equal to itself
+    return p == q ? 0 : (p ? 1 : -1);
+  }
+
+  /**
+   * Returns the number that would be at index k if the data were sorted, partially re-ordering the data so
+   * that afterwards it is in its sorted place. This is Hoare's selection algorithm ("quickselect"), using the
+   * middle item as the pivot and the same order as compareNumbers.
+   *
+   * @param d    numbers to search
+   * @param k    index in sorted order
+   * @param from index to search from; all items before it must be no greater than those after it
+   * @return the k-th number in sorted order
+   */
+  public static double select(double[] d, int k, int from) {
+    int lo = from, hi = d.length - 1;
+    while (lo < hi) {
+      double pivot = d[(lo + hi) >> 1];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (compareNumbers(d[i], pivot) < 0) i++;
+        while (compareNumbers(d[j], pivot) > 0) j--;
+        if (i <= j) {
+          double t = d[i];
+          d[i++] = d[j];
+          d[j--] = t;
+        }
+      }
+      if (k <= j) hi = j;
+      else if (k >= i) lo = i;
+      else break;
+    }
+    return d[k];
+  }
+
   @JSTranslation(ignore = true)
   public static Field toDate(Field f) {
     return toDate(f, null);
@@ -28,12 +28,12 @@ import org.brunel.data.modify.Sort;
 import org.brunel.data.modify.Stack;
 import org.brunel.data.modify.Summarize;
 import org.brunel.data.modify.Transform;
-import org.brunel.data.summary.FieldRowComparison;
+import org.brunel.data.summary.KeyIndex;
 import org.brunel.data.util.DateFormat;
 import org.brunel.data.util.Informative;
 import org.brunel.data.util.ItemsList;
 import org.brunel.data.util.Range;
-import org.brunel.data.values.ColumnProvider;
+import org.brunel.data.values.SelectionProvider;
 import org.brunel.translator.JSTranslation;
 
 import java.io.ByteArrayOutputStream;
@@ -62,46 +62,63 @@ public class Dataset extends Informative implements Serializable {
 
 	public static Dataset makeFullyDescribed(String[] names, String[] labels, String[] options, Object[][] rows) {
 		Field[] fields = new Field[names.length];
-
 		for (int k = 0; k < fields.length; k++) {
-			// Options is a base type (string,date,numeric)
-			// If a date, the format is added afterwards (date-Year, date-HourMinSec)
-			// If a range, the range is first (range-numeric, range-date-Year)
-			String[] o = options[k].split("-");
-			boolean range = o[0].equals("range");
-			String type = range ? o[1] : o[0];
-			DateFormat df = type.equals("date") ? DateFormat.valueOf(range ? o[2] : o[1]) : null;
 			Object[] values = new Object[rows.length];
-			for (int i = 0; i < values.length; i++) {
-				Object x = rows[i][k];
-				if (x == null) {
-					values[i] = null;
-				} else if (range) {
-					Object[] v = (Object[]) x;
-					if (df == null)
-						values[i] = Range.makeNumeric(Data.asNumeric(v[0]), Data.asNumeric(v[1]), false);
-					else
-						values[i] = Range.makeDateNative(Data.asDate(v[0]), Data.asDate(v[1]), false, df);
-				} else if (type.equals("numeric")) {
-					values[i] = Data.asNumeric(x);
-				} else if (type.equals("date")) {
-					values[i] = Data.asDate(x);
-				} else {
-					values[i] = x.toString();
-				}
-			}
-			String label = labels != null ? labels[k] : null;
-			fields[k] = new Field(names[k], label, new ColumnProvider(values));
-			if (type.equals("numeric")) fields[k].setNumeric();
-			if (type.equals("date")) {
-				fields[k].set("date", true);
-				fields[k].setNumeric();
-			}
-			if (type.equals("list")) fields[k] = Data.toList(fields[k]);
+			for (int i = 0; i < values.length; i++) values[i] = rows[i][k];
+			fields[k] = makeTypedField(names[k], labels != null ? labels[k] : null, options[k], values);
+		}
+		return Dataset.make(fields, false);
+	}
 
+	/**
+	 * Makes a data set from data stored by column rather than by row
+	 *
+	 * @param names   field names
+	 * @param options field types, as for makeTyped
+	 * @param columns the values for each field; these arrays are converted in place
+	 * @return the dataset
+	 */
+	public static Dataset makeTypedColumns(String[] names, String[] options, Object[][] columns) {
+		Field[] fields = new Field[names.length];
+		for (int k = 0; k < fields.length; k++)
+			fields[k] = makeTypedField(names[k], null, options[k], columns[k]);
+		return Dataset.make(fields, false);
+	}
 
+	private static Field makeTypedField(String name, String label, String option, Object[] values) {
+		// Options is a base type (string,date,numeric)
+		// If a date, the format is added afterwards (date-Year, date-HourMinSec)
+		// If a range, the range is first (range-numeric, range-date-Year)
+		String[] o = option.split("-");
+		boolean range = o[0].equals("range");
+		String type = range ? o[1] : o[0];
+		DateFormat df = type.equals("date") ? DateFormat.valueOf(range ? o[2] : o[1]) : null;
+		for (int i = 0; i < values.length; i++) {
+			Object x = values[i];
+			if (x == null) {
+				values[i] = null;
+			} else if (range) {
+				Object[] v = (Object[]) x;
+				if (df == null)
+					values[i] = Range.makeNumeric(Data.asNumeric(v[0]), Data.asNumeric(v[1]), false);
+				else
+					values[i] = Range.makeDateNative(Data.asDate(v[0]), Data.asDate(v[1]), false, df);
+			} else if (type.equals("numeric")) {
+				values[i] = Data.asNumeric(x);
+			} else if (type.equals("date")) {
+				values[i] = Data.asDate(x);
+			} else {
+				values[i] = x.toString();
+			}
 		}
-		return Dataset.make(fields, false);
+		Field field = Fields.makeColumnField(name, label, values);
+		if (type.equals("numeric")) field.setNumeric();
+		if (type.equals("date")) {
+			field.set("date", true);
+			field.setNumeric();
+		}
+		if (type.equals("list")) field = Data.toList(field);
+		return field;
 	}
 
 	/*
@@ -151,6 +168,7 @@ public class Dataset extends Informative implements Serializable {
 
 	public Field[] fields;
 	private Map<String, Field> fieldByName;
+	private Map<String, KeyIndex> keyIndices;                   // Row indices for selection keys, built as needed
 
 	protected Dataset(Field[] fields, Informative properties) {
 		this.fields = ensureUniqueNames(fields);
@@ -385,30 +403,34 @@ public class Dataset extends Informative implements Serializable {
 	 * @param keys   the fields that identify which rows are the same (data keys)
 	 */
 	public void modifySelection(String method, Integer row, Dataset source, String[] keys) {
-		String off = Field.VAL_UNSELECTED, on = Field.VAL_SELECTED;
 		Field sel = field("#selection");
-		int n = rowCount();
+		SelectionProvider selection = selectionProvider(sel);
 
 		// For simple selection (no modifiers) everything is initially cleared
-		if (method.equals("sel"))
-			for (int i = 0; i < n; i++) sel.setValue(off, i);
-
-		Set<Integer> expanded = source.expandedOriginalRows(row, keys);
-		for (int i : expanded) {
-			switch (method) {
-				case "sel":
-				case "add":
-					sel.setValue(on, i);
-					break;
-				case "sub":
-					sel.setValue(off, i);
-					break;
-				default:
-					sel.setValue(sel.value(i) == on ? off : on, i);
-					break;
-			}
+		if (method.equals("sel")) selection.clear();
+
+		int[] expanded = source.expandedOriginalRows(row, keys);
+		switch (method) {
+			case "sel":
+			case "add":
+				selection.setAll(expanded, true);
+				break;
+			case "sub":
+				selection.setAll(expanded, false);
+				break;
+			default:
+				selection.toggle(expanded);
+				break;
 		}
+	}
 
+	/*
+	 * Selection is stored as a bitmap so that changes only touch the rows they affect.
+	 * The field is converted on first use and keeps the bitmap from then on
+	 */
+	private SelectionProvider selectionProvider(Field sel) {
+		if (!(sel.provider instanceof SelectionProvider)) sel.provider = SelectionProvider.make(sel.provider);
+		return (SelectionProvider) sel.provider;
 	}
 
 	/**
@@ -417,33 +439,52 @@ public class Dataset extends Informative implements Serializable {
 	 *
 	 * @param row  target row to start with
 	 * @param keys names of the fields to use as keys
-	 * @return target rows (zero based)
+	 * @return target rows (zero based, possibly with repeats)
 	 */
-	private Set<Integer> expandedOriginalRows(Integer row, String[] keys) {
-		Set<Integer> expanded = new HashSet<>();
-		if (row == null) return expanded;                                   // No data -- no rows
-
-		int n = rowCount();
-
-		// Get all the fields we want to use for comparison and build comparator
-		Field[] keyFields = fieldArray(keys);
-		FieldRowComparison compare = new FieldRowComparison(keyFields, null, false);
+	private int[] expandedOriginalRows(Integer row, String[] keys) {
+		if (row == null) return new int[0];                                 // No data -- no rows
 
+		int[] similar = keyIndex(keys).matchingRows(row);
 		Field rowField = field("#row");
 
-		// Create a set of all rows similar to the target one
-		for (int i = 0; i < n; i++)
-			if (compare.compare(i, row) == 0) {
-				Object o = rowField.value(i);
-				if (o instanceof ItemsList) {
-					ItemsList list = (ItemsList) o;
-					for (int j = 0; j < list.size(); j++) expanded.add((Integer) list.get(j) - 1);
-				} else if (o != null)
-					expanded.add((Integer) o - 1);
-			}
+		// Count, then gather, the original rows for all rows similar to the target one
+		int count = 0;
+		for (int i : similar) {
+			Object o = rowField.value(i);
+			if (o instanceof ItemsList) count += ((ItemsList) o).size();
+			else if (o != null) count++;
+		}
+		int[] expanded = new int[count];
+		int at = 0;
+		for (int i : similar) {
+			Object o = rowField.value(i);
+			if (o instanceof ItemsList) {
+				ItemsList list = (ItemsList) o;
+				for (int j = 0; j < list.size(); j++) expanded[at++] = (Integer) list.get(j) - 1;
+			} else if (o != null)
+				expanded[at++] = (Integer) o - 1;
+		}
 		return expanded;
 	}
 
+	/*
+	 * Interactive selection asks for the same keys on every click, so the index is built once and kept.
+	 * The selection field changes as the user interacts, so an index using it cannot be kept
+	 */
+	private synchronized KeyIndex keyIndex(String[] keys) {
+		Field[] keyFields = fieldArray(keys);
+		String name = Data.join(keys, "|");
+		boolean canKeep = true;
+		for (Field f : keyFields) if (f.name.equals("#selection")) canKeep = false;
+		if (keyIndices == null) keyIndices = new HashMap<>();
+		KeyIndex index = canKeep ? keyIndices.get(name) : null;
+		if (index == null) {
+			index = new KeyIndex(keyFields, rowCount());
+			if (canKeep) keyIndices.put(name, index);
+		}
+		return index;
+	}
+
 	@JSTranslation(ignore = true)
 	private void writeObject(ObjectOutputStream out) throws IOException {
 		out.write(Serialize.serializeDataset(this));
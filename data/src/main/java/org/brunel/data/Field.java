@@ -19,12 +19,16 @@ package org.brunel.data;
 import org.brunel.data.stats.DateStats;
 import org.brunel.data.stats.NominalStats;
 import org.brunel.data.stats.NumericStats;
+import org.brunel.data.stats.StatsTiers;
 import org.brunel.data.util.DateFormat;
 import org.brunel.data.util.Informative;
 import org.brunel.data.util.ItemsList;
 import org.brunel.data.util.MapInt;
 import org.brunel.data.util.Range;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.PrimitiveProvider;
 import org.brunel.data.values.Provider;
+import org.brunel.translator.JSTranslation;
 
 public class Field extends Informative implements Comparable<Field> {
 
@@ -35,7 +39,8 @@ public class Field extends Informative implements Comparable<Field> {
   public final String name;                   // unique within the data set
   Provider provider;                          // Provides values for the field (not final as it may need conversion)
 
-  private boolean calculatedNominal, calculatedNumeric, calculatedDate;   // True when we calculate these
+  private boolean calculatedNominal, calculatedDate;                      // True when we calculate these
+  private boolean[] calculatedNumeric = new boolean[3];                   // Same, for each numeric tier from MOMENTS
   private MapInt categoryOrder;                                           // order of the categories
 
   public Field(String name, String label, Provider provider) {
@@ -52,7 +57,9 @@ public class Field extends Informative implements Comparable<Field> {
       if (provider == null) {
         // Ensure that the base field has everything calculated because we cannot calculate lazily later
         base.makeNominalStats();
-        base.makeNumericStats();
+        base.makeNumericStats(StatsTiers.MOMENTS);
+        base.makeNumericStats(StatsTiers.QUANTILES);
+        base.makeNumericStats(StatsTiers.SPACING);
         base.makeDateStats();
       }
       copyAllProperties(base);
@@ -95,21 +102,14 @@ public class Field extends Informative implements Comparable<Field> {
         makeNominalStats();
         o = super.property(key);
       }
-      if (!calculatedNumeric && NumericStats.creates(key)) {
-        if (!calculatedNominal) {
-          makeNominalStats();
-        }
-        makeNumericStats();
+      int tier = NumericStats.tier(key);
+      if (tier >= 0 && !calculatedNumeric[tier - StatsTiers.MOMENTS]) {
+        makeNumericStats(tier);
         o = super.property(key);
       }
       if (!calculatedDate && DateStats.creates(key)) {
         if (isDate()) {
-          if (!calculatedNominal) {
-            makeNominalStats();
-          }
-          if (!calculatedNumeric) {
-            makeNumericStats();
-          }
+          // The statistics needed for dates are calculated as they are asked for
           makeDateStats();
           o = super.property(key);
         } else {
@@ -149,14 +149,16 @@ public class Field extends Informative implements Comparable<Field> {
     return isProperty("binned");
   }
 
-  private void makeNumericStats() {
+  private void makeNumericStats(int tier) {
+    if (calculatedNumeric[tier - StatsTiers.MOMENTS]) return;
     if (provider != null) {
-      NumericStats.populate(this);
+      NumericStats.populate(this, tier);
     }
-    calculatedNumeric = true;
+    calculatedNumeric[tier - StatsTiers.MOMENTS] = true;
   }
 
   private void makeNominalStats() {
+    if (calculatedNominal) return;
     if (provider != null) {
       NominalStats.populate(this);
     }
@@ -230,6 +232,50 @@ public class Field extends Informative implements Comparable<Field> {
     return (Integer) property("valid");
   }
 
+  /**
+   * Returns the valid numeric values directly when the data is stored in primitive form.
+   * This avoids creating an object per row when calculating statistics
+   *
+   * @return the non-null values as numbers, or null if the field does not store primitive data
+   */
+  @JSTranslation(js = "return null;")
+  public double[] validNumericValues() {
+    return provider == null ? null : PrimitiveProvider.validNumericValues(provider);
+  }
+
+  /**
+   * Reads the numbers for every row directly when the data is stored as primitive numbers.
+   * This avoids creating an object per row when testing values
+   *
+   * @param values  filled with the value for each row (undefined for missing rows)
+   * @param missing set true for each row that has no value
+   * @return true if the values were read, false if the field does not store numbers in primitive form
+   */
+  @JSTranslation(js = "return false;")
+  public boolean readNumbers(double[] values, boolean[] missing) {
+    return provider != null && PrimitiveProvider.readNumbers(provider, values, missing);
+  }
+
+  /**
+   * Returns the unique values when the data is stored dictionary encoded
+   *
+   * @return the unique values, indexed by code, or null if the field is not dictionary encoded
+   */
+  @JSTranslation(js = "return null;")
+  public Object[] dictionary() {
+    return provider == null ? null : DictionaryProvider.dictionary(provider);
+  }
+
+  /**
+   * Returns the dictionary code for each row when the data is stored dictionary encoded
+   *
+   * @return codes into the dictionary (-1 for missing values), or null if the field is not dictionary encoded
+   */
+  @JSTranslation(js = "return null;")
+  public int[] dictionaryCodes() {
+    return provider == null ? null : DictionaryProvider.codes(provider);
+  }
+
   public Object value(Integer index) {
     return index == null ? null : provider.value(index);
   }
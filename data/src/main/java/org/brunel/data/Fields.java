@@ -18,8 +18,15 @@ package org.brunel.data;
 
 import org.brunel.data.values.ColumnProvider;
 import org.brunel.data.values.ConstantProvider;
+import org.brunel.data.values.DateProvider;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.data.values.Provider;
 import org.brunel.data.values.ReorderedProvider;
 import org.brunel.data.values.RowProvider;
+import org.brunel.translator.JSTranslation;
+
+import java.util.Date;
 
 /**
  * Utilities for manipulating fields
@@ -64,7 +71,31 @@ public class Fields {
      * @return constructed field
      */
     public static Field makeColumnField(String name, String label, Object[] data) {
-        return new Field(name, label, new ColumnProvider(data));
+        return new Field(name, label, makeColumnProvider(data));
+    }
+
+    /**
+     * Choose the most compact storage for a column of data.
+     * In Java, columns of doubles or dates are stored in primitive arrays and columns of repeated strings are
+     * dictionary encoded; everything else uses the general store
+     *
+     * @param data data to be used
+     * @return provider for the data
+     */
+    static Provider makeColumnProvider(Object[] data) {
+        Provider provider = makeCompactProvider(data);
+        return provider == null ? new ColumnProvider(data) : provider;
+    }
+
+    /* The compact stores are Java only; returns null when the general store should be used */
+    @JSTranslation(js = "return null;")
+    private static Provider makeCompactProvider(Object[] data) {
+        Object first = null;
+        for (int i = 0; i < data.length && first == null; i++) first = data[i];
+        if (first instanceof Double) return NumericProvider.make(data);
+        if (first instanceof Date) return DateProvider.make(data);
+        if (first instanceof String) return DictionaryProvider.make(data);
+        return null;
     }
 
     /**
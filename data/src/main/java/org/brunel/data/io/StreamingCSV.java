@@ -0,0 +1,650 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.io;
+
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.translator.JSTranslation;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reads CSV data incrementally, so the whole content never needs to be held as a String.
+ * The rules are exactly those of CSV.parse, but cells are built in a reusable buffer and columns
+ * where every value is a plain number are stored as doubles as they are read. Other columns are
+ * kept as (shared) strings and left for Auto.convert to type, just as for CSV.read.
+ * Inputs larger than the parallel threshold are split into chunks at record boundaries (outside quotes)
+ * and the chunks parsed on a fork/join pool, then merged in order.
+ * This is a Java-only facility.
+ */
+@JSTranslation(ignore = true)
+public class StreamingCSV {
+
+	private static final int CHUNK_SIZE = 65536;
+	private static final int MAX_PARALLEL_CHUNK = 1 << 20;
+
+	// Inputs with at least this many characters are parsed in parallel
+	private static volatile int parallelThreshold = Integer.getInteger("brunel.csv.parallelThreshold", 1 << 20);
+	private static ForkJoinPool pool;
+
+	/**
+	 * Sets the size of input above which parsing is split across processors.
+	 * Smaller inputs (such as "raw:" data) are parsed on the calling thread.
+	 *
+	 * @param characters minimum input size to parse in parallel; zero or less disables parallel parsing
+	 */
+	public static void setParallelThreshold(int characters) {
+		parallelThreshold = characters;
+	}
+
+	public static int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	private static synchronized ForkJoinPool pool() {
+		if (pool == null) pool = new ForkJoinPool();
+		return pool;
+	}
+
+	/**
+	 * Reads CSV formatted data and converts to fields
+	 * It assumes the data has headers
+	 *
+	 * @param reader source of the data; read to the end but not closed
+	 * @return fields, with numeric columns already typed
+	 * @throws IOException if the reader fails
+	 */
+	public static Field[] read(Reader reader) throws IOException {
+		Loader loader = new Loader(parallelThreshold);
+		char[] buffer = new char[CHUNK_SIZE];
+		while (!loader.isFinished()) {
+			int len = fill(reader, buffer);
+			if (len > 0) loader.accept(buffer, 0, len);
+			if (len < buffer.length) break;
+		}
+		return loader.finish();
+	}
+
+	/**
+	 * Reads UTF-8 encoded CSV data and converts to fields
+	 * It assumes the data has headers
+	 *
+	 * @param bytes the encoded data, from its position to its limit
+	 * @return fields, with numeric columns already typed
+	 * @throws IOException if the data cannot be decoded
+	 */
+	public static Field[] read(ByteBuffer bytes) throws IOException {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+		Loader loader = new Loader(parallelThreshold);
+		boolean done = false;
+		while (!done && !loader.isFinished()) {
+			CoderResult result = decoder.decode(bytes, chars, true);
+			if (result.isError()) result.throwException();
+			if (result.isUnderflow()) {
+				decoder.flush(chars);
+				done = true;
+			}
+			chars.flip();
+			loader.accept(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining());
+			chars.clear();
+		}
+		return loader.finish();
+	}
+
+	/* Read until the buffer is full or there is no more data */
+	private static int fill(Reader reader, char[] buffer) throws IOException {
+		int n = 0;
+		while (n < buffer.length) {
+			int c = reader.read(buffer, n, buffer.length - n);
+			if (c < 0) break;
+			n += c;
+		}
+		return n;
+	}
+
+	private final StringPool common = new StringPool();     // Shares repeated strings
+	private final List<String> names = new ArrayList<>();   // The header line
+	private Column[] columns;                               // Created after the header line is read
+
+	private char[] cell = new char[256];                    // The cell being built
+	private int cellLength;
+	private boolean cellNull = true;                        // Nothing has been added to the cell
+	private char separator;
+	private boolean separatorKnown, inQuote, wasQuoted, quoteSeen, finished;
+	private char last = ' ';
+	private int lineCount;                                  // Lines completed (including the header)
+	private int cellIndex;                                  // Cell within the current line
+	private boolean isChunk;                                // Parses data lines only, for a parallel read
+	private boolean failed;                                 // A chunk found a line with the wrong number of entries
+	private int failedEntries;                              // ... and this is how many entries it had
+
+	/*
+	 * Creates a parser for a chunk of data lines which follow the header this parser has read.
+	 * Lines with the wrong number of entries stop the chunk, to be reported when chunks are merged
+	 */
+	private StreamingCSV chunkParser() {
+		StreamingCSV chunk = new StreamingCSV();
+		chunk.separator = separator;
+		chunk.separatorKnown = true;
+		chunk.lineCount = 1;
+		chunk.isChunk = true;
+		chunk.columns = new Column[columns.length];
+		for (int i = 0; i < columns.length; i++) chunk.columns[i] = new Column(chunk.common);
+		return chunk;
+	}
+
+	private void accept(char[] data, int offset, int length) {
+		if (!separatorKnown) {
+			separator = CSV.findSeparator(new String(data, offset, Math.min(5000, length)));
+			separatorKnown = true;
+		}
+		int end = offset + length;
+		for (int i = offset; i < end && !finished; i++) process(data[i]);
+	}
+
+	private void process(char c) {
+		if (quoteSeen) {
+			// The character after a quote inside a quoted section; a second quote means a literal quote
+			quoteSeen = false;
+			if (c == '\"') {
+				append('\"');
+				inQuote = true;
+				last = c;
+				return;
+			}
+		}
+		if (inQuote) {
+			if (c == '\"') {
+				inQuote = false;
+				quoteSeen = true;
+			} else
+				append(c);
+		} else if (c == '\n' || c == '\r') {
+			// Ignore the second of a \n\r
+			if (last != '\r' || c != '\n') {
+				if (cellIndex == 0 && isBlankCell()) {
+					// An empty line means the end of parsing
+					finished = true;
+					return;
+				}
+				endCell();
+				endLine();
+			}
+		} else if (c == '\"') {
+			inQuote = true;
+			wasQuoted = true;
+			cellNull = false;
+		} else if (c == separator) {
+			endCell();
+		} else {
+			append(c);
+		}
+		last = c;
+	}
+
+	private Field[] finish() {
+		// Ensure the last character in the file is an additional return
+		if (!finished) process('\n');
+		finished = true;
+		if (columns == null) throw new IllegalArgumentException("No header line found in CSV data");
+
+		Field[] fields = new Field[columns.length];
+		for (int i = 0; i < fields.length; i++) {
+			String name = names.get(i) == null ? "" : names.get(i);
+			fields[i] = columns[i].makeField(CSV.identifier(name), CSV.readable(name));
+		}
+		return fields;
+	}
+
+	/**
+	 * Receives the input text and decides how to parse it. Until the parallel threshold is reached the text is
+	 * simply kept; if the input ends first it is parsed on this thread. Otherwise the header is parsed and the
+	 * rest of the text is cut into chunks of complete lines, which are parsed as pool tasks and merged in order.
+	 * A line break is the end of a record exactly when an even number of quotes precede it.
+	 */
+	private static final class Loader {
+		private final int threshold;                        // Input size for parallel parsing
+		private final int chunkSize;                        // Target size of each parallel chunk
+		private final ArrayDeque<ForkJoinTask<StreamingCSV>> running = new ArrayDeque<>();
+		private StreamingCSV sequential;                    // Set when parsing on this thread
+		private StreamingCSV head;                          // Set when parsing in parallel; merged results go here
+		private char[] pending;                             // Text not yet parsed
+		private int pendingLength;
+		private int scanned;                                // Pending text that has been scanned for quotes
+		private boolean scanInQuote;                        // Quote state at the end of the scanned text
+		private int lastBreak;                              // End of the last complete line in the scanned text
+		private int linesMerged;                            // Data lines merged into the head
+		private boolean stopped;                            // A merged chunk found a blank line
+
+		private Loader(int threshold) {
+			this.threshold = threshold;
+			this.chunkSize = Math.max(1, Math.min(threshold / 4, MAX_PARALLEL_CHUNK));
+			if (threshold <= 0)
+				sequential = new StreamingCSV();
+			else
+				pending = new char[Math.min(threshold, CHUNK_SIZE)];
+		}
+
+		private boolean isFinished() {
+			return sequential != null ? sequential.finished : stopped;
+		}
+
+		private void accept(char[] data, int offset, int length) {
+			if (sequential != null) {
+				sequential.accept(data, offset, length);
+				return;
+			}
+			if (pendingLength + length > pending.length)
+				pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+			System.arraycopy(data, offset, pending, pendingLength, length);
+			pendingLength += length;
+
+			if (head == null) {
+				if (pendingLength < threshold) return;
+				readHeader();
+				if (sequential != null) return;
+			}
+
+			scan();
+			if (lastBreak >= chunkSize) {
+				submit(Arrays.copyOfRange(pending, 0, lastBreak), false);
+				System.arraycopy(pending, lastBreak, pending, 0, pendingLength - lastBreak);
+				pendingLength -= lastBreak;
+				scanned -= lastBreak;
+				lastBreak = 0;
+			}
+		}
+
+		private Field[] finish() {
+			if (sequential == null && head == null) {
+				// Not enough data to be worth splitting
+				sequential = new StreamingCSV();
+				sequential.accept(pending, 0, pendingLength);
+			}
+			if (sequential != null) return sequential.finish();
+
+			// The remaining text is the final chunk
+			if (pendingLength > 0 && !stopped) submit(Arrays.copyOf(pending, pendingLength), true);
+			while (!running.isEmpty()) {
+				ForkJoinTask<StreamingCSV> task = running.poll();
+				if (stopped) task.cancel(false);
+				else merge(task.join());
+			}
+			head.finished = true;
+			return head.finish();
+		}
+
+		/* Parse the header on this thread, so the separator and columns are known for all chunks */
+		private void readHeader() {
+			int end = 0;
+			boolean inQuote = false;
+			while (end < pendingLength && (inQuote || pending[end] != '\n'))
+				if (pending[end++] == '\"') inQuote = !inQuote;
+			if (end == pendingLength) {
+				// No line break found, so we cannot split the data
+				sequential = new StreamingCSV();
+				sequential.accept(pending, 0, pendingLength);
+				pending = null;
+				return;
+			}
+			end++;
+
+			head = new StreamingCSV();
+			head.separator = CSV.findSeparator(new String(pending, 0, Math.min(5000, pendingLength)));
+			head.separatorKnown = true;
+			head.accept(pending, 0, end);
+			if (head.finished) {
+				// A blank first line; this will report the missing header
+				sequential = head;
+				pending = null;
+				return;
+			}
+			System.arraycopy(pending, end, pending, 0, pendingLength - end);
+			pendingLength -= end;
+			linesMerged = head.lineCount - 1;       // Usually zero, but a line may also end with a lone \r
+		}
+
+		private void scan() {
+			for (; scanned < pendingLength; scanned++) {
+				char c = pending[scanned];
+				if (c == '\"') scanInQuote = !scanInQuote;
+				else if (c == '\n' && !scanInQuote) lastBreak = scanned + 1;
+			}
+		}
+
+		private void submit(final char[] text, final boolean last) {
+			final StreamingCSV chunk = head.chunkParser();
+			running.add(pool().submit(new Callable<StreamingCSV>() {
+				public StreamingCSV call() {
+					chunk.accept(text, 0, text.length);
+					// As for a sequential read, ensure the data ends with a return
+					if (last && !chunk.finished) chunk.process('\n');
+					return chunk;
+				}
+			}));
+			// Limit the text held in memory waiting to be parsed
+			while (running.size() > 2 * pool().getParallelism() && !stopped) merge(running.poll().join());
+		}
+
+		private void merge(StreamingCSV chunk) {
+			if (stopped) return;
+			if (chunk.failed) {
+				int line = linesMerged + chunk.lineCount + 1;
+				throw new IllegalArgumentException("Line " + line + " had " + chunk.failedEntries + " entries; expected "
+						+ head.columns.length);
+			}
+			for (int i = 0; i < head.columns.length; i++) head.columns[i].append(chunk.columns[i]);
+			linesMerged += chunk.lineCount - 1;
+			stopped = chunk.finished;
+		}
+	}
+
+	private void append(char c) {
+		if (cellLength == cell.length) cell = Arrays.copyOf(cell, cellLength * 2);
+		cell[cellLength++] = c;
+		cellNull = false;
+	}
+
+	private boolean isBlankCell() {
+		for (int i = 0; i < cellLength; i++) if (cell[i] > ' ') return false;
+		return true;
+	}
+
+	private void endCell() {
+		// Unquoted strings are trimmed, and treated as nulls if empty
+		int start = 0, end = cellLength;
+		boolean isNull = cellNull;
+		if (!isNull && !wasQuoted) {
+			while (start < end && cell[start] <= ' ') start++;
+			while (end > start && cell[end - 1] <= ' ') end--;
+			isNull = start == end;
+		}
+
+		if (lineCount == 0)
+			names.add(isNull ? null : common.intern(cell, start, end - start));
+		else if (cellIndex < columns.length)
+			columns[cellIndex].add(isNull ? null : cell, start, end - start);
+
+		cellIndex++;
+		cellLength = 0;
+		cellNull = true;
+		wasQuoted = false;
+	}
+
+	private void endLine() {
+		if (lineCount == 0) {
+			columns = new Column[cellIndex];
+			for (int i = 0; i < columns.length; i++) columns[i] = new Column(common);
+		} else if (cellIndex != columns.length) {
+			if (isChunk) {
+				// The line number is only known once the chunk is merged
+				failed = true;
+				failedEntries = cellIndex;
+				finished = true;
+				return;
+			}
+			throw new IllegalArgumentException("Line " + (lineCount + 1) + " had " + cellIndex + " entries; expected "
+					+ columns.length);
+		}
+		lineCount++;
+		cellIndex = 0;
+	}
+
+	/**
+	 * Accumulates one column. Values are stored as numbers until a value is found that is not a plain number,
+	 * at which point the column switches to strings (re-creating the text of the numbers already read)
+	 */
+	private static final class Column {
+		private static final MathContext DIGITS = new MathContext(15);
+
+		private final StringPool common;
+		private final BitSet missing = new BitSet();
+		private double[] numbers = new double[1024];
+		private byte[] scales = new byte[1024];                 // decimal places as written; -1 if text is kept
+		private Map<Integer, String> texts = new HashMap<>();   // text of numbers that cannot be re-created
+		private Object[] strings;                               // non-null once we switch to strings
+		private int size;
+		private boolean anyValid;
+
+		private Column(StringPool common) {
+			this.common = common;
+		}
+
+		private void add(char[] c, int start, int len) {
+			if (strings != null) {
+				if (size == strings.length) strings = Arrays.copyOf(strings, size * 2);
+				strings[size] = c == null ? null : common.intern(c, start, len);
+			} else if (c == null) {
+				ensureNumericCapacity(size + 1);
+				missing.set(size);
+			} else if (!parseNumber(c, start, len)) {
+				switchToStrings();
+				add(c, start, len);
+				return;
+			}
+			if (c != null) anyValid = true;
+			size++;
+		}
+
+		private Field makeField(String name, String label) {
+			if (strings != null || !anyValid) {
+				Object[] data = strings == null ? new Object[size] : Arrays.copyOf(strings, size);
+				return Fields.makeColumnField(name, label, data);
+			}
+			Field field = new Field(name, label, NumericProvider.make(Arrays.copyOf(numbers, size), missing));
+			field.setNumeric();
+			return field;
+		}
+
+		/* Adds all the values of a column read from a later chunk */
+		private void append(Column other) {
+			if (other.size == 0) return;
+			if (strings == null && other.strings != null) switchToStrings();
+			if (strings != null) {
+				if (other.strings == null) other.switchToStrings();
+				if (size + other.size > strings.length)
+					strings = Arrays.copyOf(strings, Math.max(size * 2, size + other.size));
+				System.arraycopy(other.strings, 0, strings, size, other.size);
+			} else {
+				ensureNumericCapacity(size + other.size);
+				System.arraycopy(other.numbers, 0, numbers, size, other.size);
+				System.arraycopy(other.scales, 0, scales, size, other.size);
+				for (Map.Entry<Integer, String> e : other.texts.entrySet()) texts.put(size + e.getKey(), e.getValue());
+				for (int i = other.missing.nextSetBit(0); i >= 0; i = other.missing.nextSetBit(i + 1))
+					missing.set(size + i);
+			}
+			size += other.size;
+			anyValid |= other.anyValid;
+		}
+
+		private void ensureNumericCapacity(int needed) {
+			if (needed > numbers.length) {
+				int n = Math.max(numbers.length * 2, needed);
+				numbers = Arrays.copyOf(numbers, n);
+				scales = Arrays.copyOf(scales, n);
+			}
+		}
+
+		private void switchToStrings() {
+			strings = new Object[Math.max(size * 2, 16)];
+			for (int i = 0; i < size; i++) {
+				if (missing.get(i)) continue;
+				String text = scales[i] < 0 ? texts.get(i)
+						: new BigDecimal(numbers[i]).round(DIGITS).setScale(scales[i], RoundingMode.HALF_EVEN).toPlainString();
+				strings[i] = common.intern(text);
+			}
+			numbers = null;
+			scales = null;
+			texts = null;
+		}
+
+		/*
+		 * Parses numbers of the form [+-]digits[.digits][e[+-]digits] (digits optional on one side of the point).
+		 * Any other text is rejected, which simply leaves it for Auto.convert to deal with as a string.
+		 * The text is recorded if it could not be re-created from the value and the number of decimal places
+		 */
+		private boolean parseNumber(char[] c, int start, int len) {
+			int end = start + len, i = start;
+			boolean negative = false, canonical = true;
+			if (i < end && (c[i] == '-' || c[i] == '+')) {
+				negative = c[i] == '-';
+				canonical = negative;
+				i++;
+			}
+
+			long mantissa = 0;
+			int significant = 0, intDigits = 0, fracDigits = 0, exponent = 0;
+			boolean leadingZero = false;
+			for (; i < end && c[i] >= '0' && c[i] <= '9'; i++, intDigits++) {
+				if (intDigits == 0 && c[i] == '0') leadingZero = true;
+				if (significant > 0 || c[i] != '0') significant++;
+				if (significant <= 18) mantissa = mantissa * 10 + (c[i] - '0');
+				else exponent++;
+			}
+			if (leadingZero && intDigits > 1) canonical = false;
+
+			if (i < end && c[i] == '.') {
+				i++;
+				for (; i < end && c[i] >= '0' && c[i] <= '9'; i++, fracDigits++) {
+					if (significant > 0 || c[i] != '0') significant++;
+					if (significant <= 18) {
+						mantissa = mantissa * 10 + (c[i] - '0');
+						exponent--;
+					}
+				}
+				if (intDigits == 0 || fracDigits == 0) canonical = false;
+			}
+			if (intDigits + fracDigits == 0) return false;
+
+			if (i < end && (c[i] == 'e' || c[i] == 'E')) {
+				canonical = false;
+				i++;
+				boolean negativeExponent = false;
+				if (i < end && (c[i] == '-' || c[i] == '+')) negativeExponent = c[i++] == '-';
+				int e = 0, expDigits = 0;
+				for (; i < end && c[i] >= '0' && c[i] <= '9'; i++, expDigits++)
+					if (e < 10000) e = e * 10 + (c[i] - '0');
+				if (expDigits == 0) return false;
+				exponent += negativeExponent ? -e : e;
+			}
+			if (i != end) return false;
+
+			double value;
+			if (significant <= 15 && exponent >= -22 && exponent <= 22) {
+				// Both parts are exact, so one operation gives the correctly rounded result
+				value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+			} else {
+				value = Double.parseDouble(new String(c, start, len));
+			}
+			if (negative) value = -value;
+
+			if (significant > 15 || fracDigits > 127 || negative && value == 0) canonical = false;
+
+			ensureNumericCapacity(size + 1);
+			numbers[size] = value;
+			if (canonical) {
+				scales[size] = (byte) fracDigits;
+			} else {
+				scales[size] = -1;
+				texts.put(size, new String(c, start, len));
+			}
+			return true;
+		}
+
+		private static final double[] POWERS_OF_TEN = new double[23];
+
+		static {
+			POWERS_OF_TEN[0] = 1;
+			for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * A simple open-addressing pool of strings that can be looked up directly from characters,
+	 * so a String is only created the first time a value is seen
+	 */
+	private static final class StringPool {
+		private String[] table = new String[1024];
+		private int size;
+
+		String intern(String s) {
+			return intern(s.toCharArray(), 0, s.length());
+		}
+
+		String intern(char[] c, int start, int len) {
+			int hash = 0;
+			for (int i = start; i < start + len; i++) hash = 31 * hash + c[i];
+			int mask = table.length - 1;
+			int index = spread(hash) & mask;
+			for (String s = table[index]; s != null; s = table[index]) {
+				if (s.hashCode() == hash && matches(s, c, start, len)) return s;
+				index = (index + 1) & mask;
+			}
+			String s = new String(c, start, len);
+			table[index] = s;
+			if (++size * 2 > table.length) rehash();
+			return s;
+		}
+
+		private static int spread(int h) {
+			return h ^ (h >>> 16);
+		}
+
+		private static boolean matches(String s, char[] c, int start, int len) {
+			if (s.length() != len) return false;
+			for (int i = 0; i < len; i++) if (s.charAt(i) != c[start + i]) return false;
+			return true;
+		}
+
+		private void rehash() {
+			String[] old = table;
+			table = new String[old.length * 2];
+			int mask = table.length - 1;
+			for (String s : old) {
+				if (s == null) continue;
+				int index = spread(s.hashCode()) & mask;
+				while (table[index] != null) index = (index + 1) & mask;
+				table[index] = s;
+			}
+		}
+	}
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.io;
+
+import org.brunel.data.Dataset;
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.translator.JSTranslation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Writes datasets to streams in a compact binary form, and reads them back.
+ * This is version 2 of the format written by {@link Serialize}; it starts with the same version marker, and
+ * data written by {@link Serialize#serializeDataset(Dataset)} can be read by {@link #read(InputStream)}.
+ *
+ * Each field is stored in one of two layouts. Fields with repeated values write their unique values once,
+ * and then a code for each row, packed using only as many bits as the number of unique values requires.
+ * Numeric and date fields whose values are mostly unique are written as raw values, with a bitmap of
+ * the missing rows. Everything after the header can optionally be compressed.
+ * This is a Java-only facility.
+ */
+@JSTranslation(ignore = true)
+public class StreamingSerialize {
+
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int COMPRESSED = 1;                // Header flag: content is deflated
+    private static final int DICTIONARY = 1, RAW = 2;       // Field layouts
+
+    /**
+     * Write a dataset to a stream. The stream is flushed but not closed.
+     *
+     * @param data     the dataset to write
+     * @param out      target stream
+     * @param compress true to compress the content
+     * @throws IOException if the stream cannot be written to
+     */
+    public static void write(Dataset data, OutputStream out, boolean compress) throws IOException {
+        data = data.removeSpecialFields();
+        out.write(Serialize.VERSION);
+        out.write(FORMAT_VERSION);
+        out.write(compress ? COMPRESSED : 0);
+
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        DeflaterOutputStream deflated = compress ? new DeflaterOutputStream(out, deflater, 65536) : null;
+        DataOutputStream s = new DataOutputStream(new BufferedOutputStream(compress ? deflated : out, 65536));
+        try {
+            writeCount(s, data.fields.length);
+            for (Field f : data.fields) writeField(f, s);
+            s.flush();
+            if (compress) deflated.finish();
+            out.flush();
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    /**
+     * Read a dataset from a stream, in either this format or the original one.
+     * The stream is not closed, but as it is read in blocks it should contain only the dataset.
+     *
+     * @param in stream to read
+     * @return the dataset
+     * @throws IOException if the stream cannot be read or is not a dataset
+     */
+    public static Dataset read(InputStream in) throws IOException {
+        int first = in.read(), second = in.read();
+        if (first != Serialize.VERSION || second != FORMAT_VERSION) {
+            // Not our format; read it all and hand it to the original reader
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            if (first >= 0) all.write(first);
+            if (second >= 0) all.write(second);
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) all.write(buffer, 0, n);
+            Object result;
+            try {
+                result = Serialize.deserialize(all.toByteArray());
+            } catch (RuntimeException e) {
+                throw new IOException("Could not read serialized data", e);
+            }
+            if (result instanceof Dataset) return (Dataset) result;
+            throw new IOException("Serialized data is not a dataset");
+        }
+
+        int flags = in.read();
+        if (flags < 0) throw new EOFException();
+        boolean compressed = (flags & COMPRESSED) != 0;
+        Inflater inflater = compressed ? new Inflater() : null;
+        InputStream source = compressed ? new InflaterInputStream(in, inflater, 65536) : new BufferedInputStream(in, 65536);
+        try {
+            DataInputStream s = new DataInputStream(source);
+            Field[] fields = new Field[readCount(s)];
+            for (int i = 0; i < fields.length; i++) fields[i] = readField(s);
+            return Dataset.make(fields, false);     // No need to autoconvert
+        } finally {
+            if (inflater != null) inflater.end();
+        }
+    }
+
+    private static void writeField(Field field, DataOutputStream s) throws IOException {
+        int N = field.rowCount();
+        writeString(s, field.name);
+        writeString(s, field.label);
+        int type = field.isDate() ? Serialize.DATE : field.isNumeric() ? Serialize.NUMBER : Serialize.STRING;
+        s.writeByte(type);
+
+        // Use the field's own dictionary if it has one; otherwise build one, giving up if the values are
+        // mostly unique numbers, as those are better written directly
+        Object[] dictionary = field.dictionary();
+        int[] codes = dictionary == null ? null : field.dictionaryCodes();
+        if (dictionary == null) {
+            Map<Object, Integer> items = new HashMap<>();
+            List<Object> uniques = new ArrayList<>();
+            codes = new int[N];
+            for (int i = 0; i < N && codes != null; i++) {
+                Object value = field.value(i);
+                if (value == null) {
+                    codes[i] = -1;
+                    continue;
+                }
+                Integer code = items.get(value);
+                if (code == null) {
+                    code = uniques.size();
+                    items.put(value, code);
+                    uniques.add(value);
+                    if (type != Serialize.STRING && uniques.size() * 2 > N) codes = null;
+                }
+                if (codes != null) codes[i] = code;
+            }
+            if (codes != null) dictionary = uniques.toArray();
+        }
+
+        if (codes == null) {
+            // Raw layout: missing rows, then the values of the others
+            s.writeByte(RAW);
+            writeCount(s, N);
+            BitSet missing = new BitSet(N);
+            for (int i = 0; i < N; i++) if (field.value(i) == null) missing.set(i);
+            writeBits(s, missing, N);
+            for (int i = 0; i < N; i++) {
+                if (missing.get(i)) continue;
+                if (type == Serialize.DATE) s.writeLong(((Date) field.value(i)).getTime());
+                else s.writeDouble(((Number) field.value(i)).doubleValue());
+            }
+        } else {
+            // Dictionary layout: the unique values, then a code per row with zero for a missing value
+            s.writeByte(DICTIONARY);
+            writeCount(s, dictionary.length);
+            for (Object o : dictionary) {
+                if (type == Serialize.DATE) s.writeLong(((Date) o).getTime());
+                else if (type == Serialize.NUMBER) s.writeDouble(((Number) o).doubleValue());
+                else writeString(s, (String) o);
+            }
+            writeCount(s, N);
+            writeCodes(s, codes, bitsFor(dictionary.length));
+        }
+    }
+
+    private static Field readField(DataInputStream s) throws IOException {
+        String name = readString(s);
+        String label = readString(s);
+        int type = s.readUnsignedByte();
+        if (type != Serialize.NUMBER && type != Serialize.STRING && type != Serialize.DATE)
+            throw new IOException("Unknown column type " + type);
+        int layout = s.readUnsignedByte();
+
+        Field field;
+        if (layout == RAW) {
+            int N = readCount(s);
+            BitSet missing = readBits(s, N);
+            if (type == Serialize.DATE) {
+                Object[] dates = new Object[N];
+                for (int i = 0; i < N; i++) if (!missing.get(i)) dates[i] = new Date(s.readLong());
+                field = Fields.makeColumnField(name, label, dates);
+            } else {
+                double[] values = new double[N];
+                for (int i = 0; i < N; i++) if (!missing.get(i)) values[i] = s.readDouble();
+                field = new Field(name, label, NumericProvider.make(values, missing));
+            }
+        } else if (layout == DICTIONARY) {
+            // Item zero is the missing value, so the codes can be used directly as indices
+            Object[] items = new Object[readCount(s) + 1];
+            for (int i = 1; i < items.length; i++) {
+                if (type == Serialize.DATE) items[i] = new Date(s.readLong());
+                else if (type == Serialize.NUMBER) items[i] = s.readDouble();
+                else items[i] = readString(s);
+            }
+            int N = readCount(s);
+            int[] indices = readCodes(s, N, bitsFor(items.length - 1));
+            field = Fields.permute(Fields.makeColumnField(name, label, items), indices, false);
+        } else {
+            throw new IOException("Unknown field layout " + layout);
+        }
+
+        if (type == Serialize.NUMBER || type == Serialize.DATE) field.setNumeric();
+        if (type == Serialize.DATE) field.set("date", true);
+        return field;
+    }
+
+    // Number of bits needed for codes 0 .. n (zero is used for missing values)
+    private static int bitsFor(int n) {
+        return 32 - Integer.numberOfLeadingZeros(n);
+    }
+
+    // Writes codes (-1 for missing) as code+1, using the given number of bits each, low bits first
+    private static void writeCodes(DataOutputStream s, int[] codes, int bits) throws IOException {
+        long buffer = 0;
+        int held = 0;
+        for (int code : codes) {
+            buffer |= ((long) (code + 1)) << held;
+            held += bits;
+            while (held >= 8) {
+                s.writeByte((int) buffer);
+                buffer >>>= 8;
+                held -= 8;
+            }
+        }
+        if (held > 0) s.writeByte((int) buffer);
+    }
+
+    private static int[] readCodes(DataInputStream s, int n, int bits) throws IOException {
+        int[] codes = new int[n];
+        long mask = (1L << bits) - 1, buffer = 0;
+        int held = 0;
+        for (int i = 0; i < n; i++) {
+            while (held < bits) {
+                buffer |= ((long) s.readUnsignedByte()) << held;
+                held += 8;
+            }
+            codes[i] = (int) (buffer & mask);
+            buffer >>>= bits;
+            held -= bits;
+        }
+        return codes;
+    }
+
+    private static void writeBits(DataOutputStream s, BitSet bits, int n) throws IOException {
+        for (int i = 0; i < n; i += 8) {
+            int b = 0;
+            for (int j = 0; j < 8 && i + j < n; j++) if (bits.get(i + j)) b |= 1 << j;
+            s.writeByte(b);
+        }
+    }
+
+    private static BitSet readBits(DataInputStream s, int n) throws IOException {
+        BitSet bits = new BitSet(n);
+        for (int i = 0; i < n; i += 8) {
+            int b = s.readUnsignedByte();
+            for (int j = 0; j < 8 && b != 0; j++, b >>>= 1) if ((b & 1) != 0) bits.set(i + j);
+        }
+        return bits;
+    }
+
+    // Unsigned variable length integer; seven bits per byte with the top bit set when more follow
+    private static void writeCount(DataOutputStream s, int n) throws IOException {
+        while ((n & ~0x7f) != 0) {
+            s.writeByte((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        s.writeByte(n);
+    }
+
+    private static int readCount(DataInputStream s) throws IOException {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = s.readUnsignedByte();
+            result |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IOException("Malformed count");
+    }
+
+    // Strings are written as their UTF-8 length plus one, then the bytes; zero encodes a null
+    private static void writeString(DataOutputStream s, String text) throws IOException {
+        if (text == null) {
+            writeCount(s, 0);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeCount(s, bytes.length + 1);
+        s.write(bytes);
+    }
+
+    private static String readString(DataInputStream s) throws IOException {
+        int n = readCount(s);
+        if (n == 0) return null;
+        byte[] bytes = new byte[n - 1];
+        s.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
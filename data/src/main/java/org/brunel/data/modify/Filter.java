@@ -19,6 +19,7 @@ package org.brunel.data.modify;
 import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
+import org.brunel.translator.JSTranslation;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -45,9 +46,22 @@ public class Filter extends DataOperation {
      *      Each can be negated with a "!" in front of it, which also negates the type value
      */
     public static Dataset transform(Dataset base, String command) {
+        // Returns null when indexing is the same as the whole data
+        int[] keep = rowsToKeep(base, command);
+        return keep == null ? base : base.retainRows(keep);
+    }
+
+    /**
+     * Evaluates the filter commands without building a new data set
+     *
+     * @param base    data to filter
+     * @param command filter commands, as for transform
+     * @return the rows to keep, in order, or null if all rows are kept
+     */
+    public static int[] rowsToKeep(Dataset base, String command) {
         String[] commands = strings(command, ';');
         int N = commands.length;
-        if (N == 0) return base;
+        if (N == 0) return null;
 
         // Parse and assemble info for the commands
         Field[] field = new Field[N];
@@ -80,15 +94,22 @@ public class Filter extends DataOperation {
             params[i] = par;
         }
 
-        // Returns null when indexing is the same as the whole data
-        int[] keep = makeRowsToKeep(field, type, params, keepMissing);
-
-        return keep == null ? base : base.retainRows(keep);
-
+        return makeRowsToKeep(field, type, params, keepMissing);
     }
 
     /* Get the object that are at the indicated positions for the field, by rank */
     private static Object[] getRankedObjects(Field field, double p1, double p2) {
+        // Only the two ranked values are needed, so we select them rather than sorting all the data
+        double[] numbers = field.isDate() ? null : field.validNumericValues();
+        if (numbers != null) {
+            int N = numbers.length;
+            int a = Math.min(Math.max(1, (int) p1), N);
+            int b = Math.min(Math.max(1, (int) p2), N);
+            double high = Data.select(numbers, N - a, 0);
+            double low = Data.select(numbers, N - b, 0);
+            return new Object[]{low, high};
+        }
+
         ArrayList<Object> data = new ArrayList<>();
         int n = field.rowCount();
         for (int i = 0; i < n; i++) {
@@ -96,16 +117,40 @@ public class Filter extends DataOperation {
             if (o != null) data.add(o);
         }
         Object[] d = data.toArray(new Object[data.size()]);
-        Data.sort(d);
 
         int N = d.length;
         int a = Math.min(Math.max(1, (int) p1), N);
         int b = Math.min(Math.max(1, (int) p2), N);
-        Object high = d[N - a];
-        Object low = d[N - b];
+        Object high = select(d, N - a);
+        Object low = select(d, N - b);
         return new Object[]{low, high};
     }
 
+    /*
+     * Returns the item that would be at index k if the data were sorted, partially re-ordering the data.
+     * This is the object version of Data.select, for values that are not stored as numbers
+     */
+    private static Object select(Object[] d, int k) {
+        int lo = 0, hi = d.length - 1;
+        while (lo < hi) {
+            Object pivot = d[(lo + hi) >> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (Data.compare(d[i], pivot) < 0) i++;
+                while (Data.compare(d[j], pivot) > 0) j--;
+                if (i <= j) {
+                    Object t = d[i];
+                    d[i++] = d[j];
+                    d[j--] = t;
+                }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else break;
+        }
+        return d[k];
+    }
+
     private static int getType(String s) {
         // Negated form
         if (s.startsWith("!")) return -getType(s.substring(1).trim());
@@ -131,6 +176,8 @@ public class Filter extends DataOperation {
     }
 
     private static int[] makeRowsToKeep(Field[] field, int[] type, Object[][] params, boolean[] keepMissing) {
+        if (usesBitmaps()) return bitmapRowsToKeep(field, type, params, keepMissing);
+
         List<Integer> rows = new ArrayList<>();
         int n = field[0].rowCount();
         for (int row = 0; row < n; row++) {
@@ -142,16 +189,7 @@ public class Filter extends DataOperation {
                     break;
                 }
 
-                int t = type[i];
-                Object[] pars = params[i];
-
-                if (t == 2 || t == -2)
-                    bad = !matchAny(v, pars);
-                else if (t == 3 || t == -3)
-                    bad = Data.compare(v, pars[0]) < 0 || Data.compare(v, pars[1]) > 0;
-
-                if (t < 0) bad = !bad;
-
+                bad = isBad(v, type[i], params[i]);
                 if (bad) break;             // Known to be bad
             }
             if (!bad) rows.add(row);
@@ -162,6 +200,26 @@ public class Filter extends DataOperation {
         return keep;
     }
 
+    /* Row bitmaps are used in Java; the Javascript version tests row by row */
+    @JSTranslation(js = "return false;")
+    private static boolean usesBitmaps() {
+        return true;
+    }
+
+    @JSTranslation(js = "return null;")
+    private static int[] bitmapRowsToKeep(Field[] field, int[] type, Object[][] params, boolean[] keepMissing) {
+        return FilterBitmap.rowsToKeep(field, type, params, keepMissing);
+    }
+
+    static boolean isBad(Object v, int t, Object[] pars) {
+        boolean bad = false;
+        if (t == 2 || t == -2)
+            bad = !matchAny(v, pars);
+        else if (t == 3 || t == -3)
+            bad = Data.compare(v, pars[0]) < 0 || Data.compare(v, pars[1]) > 0;
+        return t < 0 ? !bad : bad;
+    }
+
     private static boolean matchAny(Object v, Object[] params) {
         for (Object p : params) if (Data.compare(v, p) == 0) return true;
         return false;
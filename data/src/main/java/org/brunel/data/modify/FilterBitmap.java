@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.modify;
+
+import org.brunel.data.Field;
+import org.brunel.translator.JSTranslation;
+
+/**
+ * Evaluates filter clauses into row bitmaps: each bit of a long marks one row.
+ * Each clause is compiled into a test suited to how its field stores data (dictionary codes, primitive numbers,
+ * or general objects) and is only run for rows that have passed the clauses before it.
+ * This is only used in Java; the Javascript version tests each row in turn
+ */
+@JSTranslation(ignore = true)
+class FilterBitmap {
+
+    private static final int PASS = 0, FAIL = 1, MISSING = 2;
+
+    /**
+     * Finds the rows which pass all the filter clauses.
+     * As when testing row by row, a missing value decides a row at the first clause it is found:
+     * the row is kept if that clause keeps missing values, and otherwise dropped
+     *
+     * @return rows to keep, in order, or null if all rows are kept
+     */
+    static int[] rowsToKeep(Field[] field, int[] type, Object[][] params, boolean[] keepMissing) {
+        int n = field[0].rowCount();
+        long[] alive = new long[(n + 63) >>> 6];           // Rows that have passed every clause so far
+        long[] kept = new long[alive.length];               // Rows kept because of a missing value
+        for (int w = 0; w < alive.length; w++) alive[w] = -1L;
+        if ((n & 63) != 0) alive[alive.length - 1] = (1L << n) - 1;
+
+        for (int i = 0; i < field.length; i++) {
+            RowTest test = compile(field[i], type[i], params[i], n);
+            for (int w = 0; w < alive.length; w++) {
+                long bits = alive[w];
+                if (bits == 0) continue;
+                long fail = 0, missing = 0;
+                for (long b = bits; b != 0; b &= b - 1) {
+                    long bit = b & -b;
+                    int result = test.test((w << 6) + Long.numberOfTrailingZeros(bit));
+                    if (result == FAIL) fail |= bit;
+                    else if (result == MISSING) missing |= bit;
+                }
+                alive[w] = bits & ~(fail | missing);
+                if (keepMissing[i]) kept[w] |= missing;
+            }
+        }
+
+        int count = 0;
+        for (int w = 0; w < alive.length; w++) {
+            alive[w] |= kept[w];
+            count += Long.bitCount(alive[w]);
+        }
+        return count == n ? null : toRows(alive, count);
+    }
+
+    /* The set bits as row indices */
+    static int[] toRows(long[] bitmap, int count) {
+        int[] rows = new int[count];
+        int k = 0;
+        for (int w = 0; w < bitmap.length; w++)
+            for (long b = bitmap[w]; b != 0; b &= b - 1)
+                rows[k++] = (w << 6) + Long.numberOfTrailingZeros(b);
+        return rows;
+    }
+
+    private static RowTest compile(Field field, int type, Object[] params, int n) {
+        Object[] dictionary = field.dictionary();
+        if (dictionary != null) return new DictionaryTest(field.dictionaryCodes(), dictionary, type, params);
+
+        // Numeric tests only match the object comparisons when all the parameters are numbers
+        boolean numericParams = type == 2 || type == -2 || type == 3 || type == -3;
+        for (Object p : params) if (!(p instanceof Number)) numericParams = false;
+        if (numericParams) {
+            double[] values = new double[n];
+            boolean[] missing = new boolean[n];
+            if (field.readNumbers(values, missing)) return new NumericTest(values, missing, type, params);
+        }
+        return new ObjectTest(field, type, params);
+    }
+
+    private static abstract class RowTest {
+        abstract int test(int row);
+    }
+
+    /* Evaluates the clause once for each unique value */
+    private static final class DictionaryTest extends RowTest {
+        private final int[] codes;
+        private final boolean[] bad;
+
+        DictionaryTest(int[] codes, Object[] dictionary, int type, Object[] params) {
+            this.codes = codes;
+            this.bad = new boolean[dictionary.length];
+            for (int c = 0; c < dictionary.length; c++) bad[c] = Filter.isBad(dictionary[c], type, params);
+        }
+
+        int test(int row) {
+            int code = codes[row];
+            return code < 0 ? MISSING : (bad[code] ? FAIL : PASS);
+        }
+    }
+
+    /* Compares primitive values, in the same way Data.compare compares numbers */
+    private static final class NumericTest extends RowTest {
+        private final double[] values;
+        private final boolean[] missing;
+        private final double[] targets;
+        private final boolean range, negated;
+
+        NumericTest(double[] values, boolean[] missing, int type, Object[] params) {
+            this.values = values;
+            this.missing = missing;
+            this.range = type == 3 || type == -3;
+            this.negated = type < 0;
+            targets = new double[params.length];
+            for (int i = 0; i < targets.length; i++) targets[i] = ((Number) params[i]).doubleValue();
+        }
+
+        int test(int row) {
+            if (missing[row]) return MISSING;
+            double v = values[row];
+            boolean bad;
+            if (range) {
+                bad = Double.compare(v, targets[0]) < 0 || Double.compare(v, targets[1]) > 0;
+            } else {
+                bad = true;
+                for (double t : targets)
+                    if (Double.compare(v, t) == 0) {
+                        bad = false;
+                        break;
+                    }
+            }
+            return bad != negated ? FAIL : PASS;
+        }
+    }
+
+    private static final class ObjectTest extends RowTest {
+        private final Field field;
+        private final int type;
+        private final Object[] params;
+
+        ObjectTest(Field field, int type, Object[] params) {
+            this.field = field;
+            this.type = type;
+            this.params = params;
+        }
+
+        int test(int row) {
+            Object v = field.value(row);
+            if (v == null) return MISSING;
+            return Filter.isBad(v, type, params) ? FAIL : PASS;
+        }
+    }
+}
@@ -22,8 +22,11 @@ import org.brunel.data.Field;
 import org.brunel.data.Fields;
 import org.brunel.data.summary.DimensionField;
 import org.brunel.data.summary.FieldRowComparison;
+import org.brunel.data.summary.HashGrouping;
+import org.brunel.data.summary.MeasureAccumulator;
 import org.brunel.data.summary.MeasureField;
 import org.brunel.data.summary.SummaryValues;
+import org.brunel.translator.JSTranslation;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -38,6 +41,8 @@ import java.util.List;
  *
  * 'transform' is a statistical summary; one of sum, count, mode, median, mean, q1, q3, range, variance,
  * stddev, list (concatenates names together), iqr(interquartile range), range.
+ * The option 'approx' (e.g. 'FIELD_NAME : median : approx') calculates median, q1, q3, iqr and unique
+ * from fixed-size sketches, so memory does not grow with the size of each group.
  *
  * Note that an empty field is legal for the count transform
  */
@@ -135,18 +140,36 @@ public class Summarize extends DataOperation {
 
         // group[row] gives the index of the summary group for row 'row'; 'groupCount' is the number of groups
         int[] group = new int[rowCount];
-        int groupCount = buildGroups(group, dimComparison);
+        int groupCount = buildGroups(group, dimensionFields, dimComparison);
 
         // These are just like the summary groups, but only for the percent bases
         // The percent groups nest within each base group: rows with the same group have the same summary group also
         // we do not create these if they are not needed, for efficiency
         int[] percentGroup = percentNeeded ? new int[rowCount] : null;
-        int percentGroupCount = percentNeeded ? buildGroups(percentGroup, percentBaseComparison) : 0;
+        int percentGroupCount = percentNeeded ? buildGroups(percentGroup, percentBaseFields, percentBaseComparison) : 0;
 
-        // Create the summary values for each group, and percentage sums
+        // Measures that can be calculated as rows are added, rather than from all the group values afterwards
+        boolean[] accumulate = new boolean[measureFields.length];
+        boolean anyAccumulate = false;
+        for (int i = 0; i < measureFields.length; i++) {
+            accumulate[i] = measureFields[i] != null && MeasureAccumulator.handles(measures.get(i));
+            if (accumulate[i]) anyAccumulate = true;
+        }
+
+        // Create the summary values for each group, sized to hold its rows, and percentage sums
+        int[] groupSize = new int[groupCount];
+        for (int row = 0; row < rowCount; row++) groupSize[group[row]]++;
         SummaryValues[] summaries = new SummaryValues[groupCount];
-        for (int i = 0; i < summaries.length; i++)
+        for (int i = 0; i < summaries.length; i++) {
             summaries[i] = new SummaryValues(measureFields, percentBaseFields, dimensionFields);
+            summaries[i].rows = new int[groupSize[i]];
+            groupSize[i] = 0;                           // Re-used to count rows as they are added
+            if (anyAccumulate) {
+                summaries[i].accumulators = new MeasureAccumulator[measureFields.length];
+                for (int j = 0; j < measureFields.length; j++)
+                    if (accumulate[j]) summaries[i].accumulators[j] = MeasureAccumulator.make(measures.get(j));
+            }
+        }
         double[][] percentSums = new double[percentGroupCount][measureFields.length];
 
         // Perform the Aggregation
@@ -164,7 +187,11 @@ public class Summarize extends DataOperation {
                 }
             }
             // Add the current row to that group, with the relevant 'sums' for percentages
-            value.rows.add(row);
+            value.rows[groupSize[group[row]]++] = row;
+            if (anyAccumulate) {
+                for (int i = 0; i < measureFields.length; i++)
+                    if (accumulate[i]) value.accumulators[i].add(measureFields[i].value(row));
+            }
         }
 
         Object[][] dimData = new Object[dimensions.size()][groupCount];
@@ -222,8 +249,12 @@ public class Summarize extends DataOperation {
         return result;
     }
 
-    private int buildGroups(int[] group, FieldRowComparison dimComparison) {
+    private int buildGroups(int[] group, Field[] fields, FieldRowComparison dimComparison) {
         if (dimComparison.isEmpty()) return 1;
+        int hashed = hashGroups(group, fields);
+        if (hashed >= 0) return hashed;
+
+        // Sort the rows, and start a new group wherever they differ
         int[] order = dimComparison.makeSortedOrder();
         int currentGroup = 0;
         for (int i = 0; i < group.length; i++) {
@@ -235,4 +266,10 @@ public class Summarize extends DataOperation {
         return currentGroup + 1;
     }
 
+    /* Hashing the values gives the same groups without sorting every row; the Javascript version always sorts */
+    @JSTranslation(js = "return -1;")
+    private int hashGroups(int[] group, Field[] fields) {
+        return HashGrouping.build(fields, group);
+    }
+
 }
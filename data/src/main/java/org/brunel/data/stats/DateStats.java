@@ -23,6 +23,7 @@ import org.brunel.data.util.DateUnit;
 public class DateStats {
 
     public static void populate(Field f) {
+        StatsTiers.record(StatsTiers.DATES);
         if (f.min() == null) return;        // Nope!
 
         // If we have a degenerate date range, choose units assuming the min is 0
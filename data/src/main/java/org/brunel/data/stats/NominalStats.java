@@ -22,6 +22,7 @@ import org.brunel.data.util.MapInt;
 public class NominalStats {
 
     public static void populate(Field f) {
+        StatsTiers.record(StatsTiers.NOMINAL);
         MapInt counts = new MapInt();
         int N = f.rowCount();
 
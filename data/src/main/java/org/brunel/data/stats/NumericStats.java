@@ -24,75 +24,108 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Numeric statistics are calculated in three tiers, so asking for the extent of a field does not also sort it:
+ * moments (a pass for the extent and mean, then one for the other moments), quantiles (found by selection)
+ * and spacing (the gaps between sorted values, which needs a full sort)
+ */
 public class NumericStats {
 
-	public static void populate(Field f) {
-		int n = f.rowCount();
+	/**
+	 * Calculates the statistics for one tier
+	 *
+	 * @param f    field to calculate for
+	 * @param tier one of StatsTiers.MOMENTS, QUANTILES or SPACING
+	 */
+	public static void populate(Field f, int tier) {
+		StatsTiers.record(tier);
 
-		// Extract valid numeric data
-		List<Double> valid = new ArrayList<>();
-		for (int i = 0; i < n; i++) {
-			Object item = f.value(i);
-			if (item != null) {
-				if (item instanceof Range) {
-					Object low = ((Range) item).low;
-					Object high = ((Range) item).high;
-					valid.add(Data.asNumeric(low));
-					valid.add(Data.asNumeric(high));
-				} else {
-					Double d = Data.asNumeric(item);
-					if (d != null) valid.add(d);
-				}
-			}
-		}
-		Double[] data = valid.toArray(new Double[valid.size()]);
+		// Primitive data can be used directly; otherwise extract the valid numeric data
+		double[] data = f.validNumericValues();
+		if (data == null) data = extractValid(f);
+
+		if (tier == StatsTiers.MOMENTS) populateMoments(f, data);
+		else if (data.length == 0) return;                  // No numeric data -- give up and go home
+		else if (tier == StatsTiers.QUANTILES) populateQuantiles(f, data);
+		else populateSpacing(f, data);
+	}
 
-		n = data.length;
+	private static void populateMoments(Field f, double[] data) {
+		int n = data.length;
 		f.set("validNumeric", n);
 
 		// No numeric data -- give up and go home
 		if (n == 0) return;
 
+		// The extent and the mean. Non-integers are counted to know if all values other than the minimum are integers
+		double min = data[0], max = data[0], sum = 0;
+		int nonInteger = 0;
+		for (double v : data) {
+			sum += v;
+			if (Data.compareNumbers(v, min) < 0) min = v;
+			if (Data.compareNumbers(v, max) > 0) max = v;
+			if (v != Math.round(v)) nonInteger++;
+		}
+
 		// Calculate the moments, used for standard statistics
-		double m1 = moment(data, 0, 1, n);
-		double m2 = moment(data, m1, 2, n - 1);
-		double m3 = moment(data, m1, 3, n - 1);
-		double m4 = moment(data, m1, 4, n - 1);
+		double m1 = sum / n;
+		double s2 = 0, s3 = 0, s4 = 0;
+		for (double v : data) {
+			double d = v - m1;
+			s2 += Math.pow(d, 2);
+			s3 += Math.pow(d, 3);
+			s4 += Math.pow(d, 4);
+		}
+		double m2 = n > 1 ? s2 / (n - 1) : Double.NaN;
+		double m3 = n > 1 ? s3 / (n - 1) : Double.NaN;
+		double m4 = n > 1 ? s4 / (n - 1) : Double.NaN;
 		f.set("mean", m1);
 		f.set("stddev", Math.sqrt(m2));
 		f.set("variance", m2);
 		f.set("skew", m3 / m2 / Math.sqrt(m2));
 		f.set("kurtosis", m4 / m2 / m2 - 3.0);
-
-		Arrays.sort(data);
-		double min = data[0];
-		double max = data[n - 1];
 		f.set("min", min);
 		f.set("max", max);
 
+		boolean allInteger = nonInteger == (min != Math.round(min) ? 1 : 0);
+		double range = max == min ? (max == 0 ? 1 : Math.abs(max)) : max - min;
+		double places = Math.max(0, Math.round(4 - Math.log(range) / Math.log(10)));         // decimal places to show range
+		f.set("decimalPlaces", allInteger && max - min > 5 ? 0 : places);
+	}
+
+	private static void populateQuantiles(Field f, double[] data) {
+		int n = data.length;
+
 		// Order statistics: using the Tukey hinge definition
-		f.set("median", av(data, (n - 1) * 0.5));
+		double q1, q3;
 		if (n % 2 == 0) {
 			// Even data, include the median in upper and lower
-			f.set("q1", av(data, (n / 2 - 1) * 0.5));
-			f.set("q3", av(data, n / 2 + (n / 2 - 1) * 0.5));
+			q1 = (n / 2 - 1) * 0.5;
+			q3 = n / 2 + (n / 2 - 1) * 0.5;
 		} else {
 			// Odd data, do not include the median in upper and lower
-			f.set("q1", av(data, (n - 1) * 0.25));
-			f.set("q3", av(data, (n - 1) / 2 + (n - 1) * 0.25));
+			q1 = (n - 1) * 0.25;
+			q3 = (n - 1) / 2 + (n - 1) * 0.25;
 		}
 
+		// The positions needed increase from q1 to q3, so each selection only needs to search above the last
+		f.set("q1", av(data, q1, 0));
+		f.set("median", av(data, (n - 1) * 0.5, (int) Math.ceil(q1)));
+		f.set("q3", av(data, q3, (int) Math.ceil((n - 1) * 0.5)));
+	}
+
+	private static void populateSpacing(Field f, double[] data) {
+		Arrays.sort(data);
+		double min = data[0];
+		double max = data[data.length - 1];
+
 		double minD = max - min;
-		boolean allInteger = true;
 		if (minD == 0) minD = Math.abs(max);
 		for (int i = 1; i < data.length; i++) {
 			double d = data[i] - data[i - 1];
 			if (d > 0) minD = Math.min(minD, d);
-			if (allInteger && data[i] != Math.round(data[i])) allInteger = false;
 		}
 
-		f.set("minDelta", minD);
-
 		// minD is the minimum difference between items; now calculate the granularity by updating it so it
 		// divides in evenly into all the differences
 		double granularity = minD;
@@ -111,37 +144,58 @@ public class NumericStats {
 
 		f.set("minDelta", minD);
 		f.set("granularity", granularity);
+	}
 
-		double range = max == min ? (max == 0 ? 1 : Math.abs(max)) : max - min;
-		double places = Math.max(0, Math.round(4 - Math.log(range) / Math.log(10)));         // decimal places to show range
-		f.set("decimalPlaces", allInteger && max - min > 5 ? 0 : places);
+	private static double[] extractValid(Field f) {
+		int n = f.rowCount();
+		List<Double> valid = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			Object item = f.value(i);
+			if (item != null) {
+				if (item instanceof Range) {
+					Object low = ((Range) item).low;
+					Object high = ((Range) item).high;
+					valid.add(Data.asNumeric(low));
+					valid.add(Data.asNumeric(high));
+				} else {
+					Double d = Data.asNumeric(item);
+					if (d != null) valid.add(d);
+				}
+			}
+		}
+		double[] data = new double[valid.size()];
+		for (int i = 0; i < data.length; i++) data[i] = valid.get(i);
+		return data;
 	}
 
 	/*
-	 * Calculates the centralized moment where
-	 * c is the center,
-	 * p is the power to raise to,
-	 * N is the total weight (the amount to divide by)
+	 * The average of the values either side of the index in sorted order.
+	 * The data is partially re-ordered; all items before 'from' must be no greater than those after it
 	 */
-	private static double moment(Double[] data, double c, int p, double N) {
-		if (N <= 0) return Double.NaN;
-		double sum = 0.0;
-		for (Double element : data)
-			sum += Math.pow(element - c, p);
-		return sum / N;
-	}
-
-	private static double av(Double[] v, double index) {
-		return (v[(int) Math.floor(index)] + v[(int) Math.ceil(index)]) / 2.0;
+	private static double av(double[] v, double index, int from) {
+		int lo = (int) Math.floor(index), hi = (int) Math.ceil(index);
+		double a = Data.select(v, lo, from);
+		return (a + (hi == lo ? a : Data.select(v, hi, lo))) / 2.0;
 	}
 
-	public static boolean creates(String key) {
-		return "validNumeric".equals(key) || "mean".equals(key)
+	/**
+	 * The tier that calculates a property
+	 *
+	 * @param key property name
+	 * @return the tier, or -1 if the property is not a numeric statistic
+	 */
+	public static int tier(String key) {
+		if ("validNumeric".equals(key) || "mean".equals(key)
 				|| "stddev".equals(key) || "variance".equals(key)
 				|| "skew".equals(key) || "kurtosis".equals(key)
 				|| "min".equals(key) || "max".equals(key)
-				|| "q1".equals(key) || "q3".equals(key)
-				|| "median".equals(key) || "granularity".equals(key)
-				|| "decimalPlaces".equals(key);
+				|| "decimalPlaces".equals(key)) return StatsTiers.MOMENTS;
+		if ("q1".equals(key) || "q3".equals(key) || "median".equals(key)) return StatsTiers.QUANTILES;
+		if ("granularity".equals(key) || "minDelta".equals(key)) return StatsTiers.SPACING;
+		return -1;
+	}
+
+	public static boolean creates(String key) {
+		return tier(key) >= 0;
 	}
 }
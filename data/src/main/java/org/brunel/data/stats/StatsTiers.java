@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.stats;
+
+/**
+ * Field statistics are calculated in tiers, each only when one of its properties is first asked for.
+ * This records how many times each tier has been calculated, so the savings can be monitored.
+ * Counts are not synchronized, so are approximate when fields are used from several threads at once
+ */
+public class StatsTiers {
+
+    public static final int NOMINAL = 0;            // counts, uniques, mode and categories
+    public static final int MOMENTS = 1;            // extents and moments
+    public static final int QUANTILES = 2;          // median and quartiles
+    public static final int SPACING = 3;            // gaps between sorted values
+    public static final int DATES = 4;              // date units and formats
+
+    private static final int[] runCounts = new int[5];
+
+    static void record(int tier) {
+        runCounts[tier]++;
+    }
+
+    /**
+     * The number of times a tier has been calculated
+     *
+     * @param tier one of the tier constants
+     * @return number of calculations since the last reset
+     */
+    public static int runs(int tier) {
+        return runCounts[tier];
+    }
+
+    public static void reset() {
+        for (int i = 0; i < runCounts.length; i++) runCounts[i] = 0;
+    }
+}
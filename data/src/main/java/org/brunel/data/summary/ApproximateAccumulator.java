@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.summary;
+
+import org.brunel.translator.JSTranslation;
+
+/**
+ * Accumulates measures from sketches whose size does not depend on the number of values:
+ * median, q1, q3 and iqr use a quantile sketch and unique uses a distinct-count sketch.
+ * Other statistics are calculated exactly, as for the base class.
+ * This is a Java-only facility; the Javascript version calculates exact results.
+ */
+@JSTranslation(ignore = true)
+public class ApproximateAccumulator extends MeasureAccumulator {
+
+    /**
+     * Tests whether a summary method has an approximate calculation
+     *
+     * @param method summary method
+     * @return true if it can be approximated
+     */
+    public static boolean handles(String method) {
+        return method.equals("median") || method.equals("q1") || method.equals("q3")
+                || method.equals("iqr") || method.equals("unique");
+    }
+
+    private final QuantileSketch quantiles;
+    private final DistinctSketch distinct;
+
+    public ApproximateAccumulator(String method) {
+        super(null);
+        boolean unique = method.equals("unique");
+        quantiles = unique ? null : new QuantileSketch();
+        distinct = unique ? new DistinctSketch() : null;
+    }
+
+    public void add(Object value) {
+        super.add(value);
+        if (value != null && distinct != null) distinct.add(value);
+    }
+
+    protected void addNumeric(Double value) {
+        super.addNumeric(value);
+        if (value != null && quantiles != null) quantiles.add(value);
+    }
+
+    public Object get(String key) {
+        if (key.equals("unique") && distinct != null) return distinct.estimate();
+        if (quantiles != null) {
+            if (key.equals("median")) return quantiles.quantile(0.5);
+            if (key.equals("q1")) return quantiles.quantile(0.25);
+            if (key.equals("q3")) return quantiles.quantile(0.75);
+        }
+        return super.get(key);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.summary;
+
+import org.brunel.translator.JSTranslation;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A HyperLogLog distinct-count sketch. Small numbers of distinct values are counted exactly; beyond that the
+ * values are hashed into a fixed set of registers (4KB) giving a relative error of around 2%.
+ */
+@JSTranslation(ignore = true)
+public class DistinctSketch {
+    private static final int EXACT_LIMIT = 256;             // Count exactly up to this many distinct values
+    private static final int PRECISION = 12;                // Number of bits used to choose a register
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private Set<Object> exact = new HashSet<>();
+    private byte[] registers;
+
+    public void add(Object value) {
+        if (exact != null) {
+            exact.add(value);
+            if (exact.size() <= EXACT_LIMIT) return;
+            // Too many values to hold; switch to the registers
+            registers = new byte[REGISTERS];
+            for (Object o : exact) addHashed(o);
+            exact = null;
+        } else {
+            addHashed(value);
+        }
+    }
+
+    public int estimate() {
+        if (exact != null) return exact.size();
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        // Small range correction uses linear counting
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        return (int) Math.round(estimate);
+    }
+
+    private void addHashed(Object value) {
+        long h = mix(value.hashCode());
+        int index = (int) (h >>> (64 - PRECISION));
+        long rest = (h << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) registers[index] = rank;
+    }
+
+    /* Spread the bits of a hash code over 64 bits (the SplitMix64 finalizer) */
+    private static long mix(int hash) {
+        long z = hash + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
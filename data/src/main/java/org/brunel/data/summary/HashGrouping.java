@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Field;
+import org.brunel.translator.JSTranslation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assigns rows to groups by hashing the values of the grouping fields, rather than sorting all the rows.
+ * Groups are numbered in the order given by comparing rows on the fields, so the result is the same as for
+ * sorting the rows and breaking them where they differ. Only the distinct values (and distinct combinations)
+ * are ever sorted.
+ * This is a Java-only facility; the Javascript version sorts the rows.
+ */
+@JSTranslation(ignore = true)
+public class HashGrouping {
+
+    private static final int MAX_DIRECT_TABLE = 1 << 22;        // Largest combination table we index directly
+    private static final int DIRECT_TABLE_PER_ROW = 4;          // And it must be no more than this times the rows
+
+    /**
+     * Sets the group for each row
+     *
+     * @param fields fields that define the groups
+     * @param group  filled with the group index for each row
+     * @return the number of groups
+     */
+    public static int build(Field[] fields, int[] group) {
+        int n = group.length;
+        int count = rankCodes(fields[0], group);
+        int[] codes = new int[n];
+        for (int f = 1; f < fields.length; f++) {
+            int k = rankCodes(fields[f], codes);
+            if ((long) count * k <= Math.min((long) DIRECT_TABLE_PER_ROW * n, MAX_DIRECT_TABLE))
+                count = combineDirect(group, codes, count, k);
+            else
+                count = combineHashed(group, codes, k);
+        }
+        return count;
+    }
+
+    /*
+     * Sets codes so that rows have the same code when they compare as equal, and codes are ordered
+     * the same way the rows compare. Returns the number of distinct codes
+     */
+    private static int rankCodes(final Field field, int[] codes) {
+        int n = codes.length;
+
+        // Give each distinct value an id, in order of first occurrence, and record a row that has it
+        int[] firstRow = new int[16];
+        int distinct = 0;
+        int[] dictionary = field.dictionaryCodes();
+        if (dictionary != null) {
+            // Already encoded; we just need to map to dense ids (missing values have code -1)
+            int[] idForCode = new int[field.dictionary().length + 1];
+            Arrays.fill(idForCode, -1);
+            for (int i = 0; i < n; i++) {
+                int c = dictionary[i] + 1;
+                if (idForCode[c] < 0) {
+                    if (distinct == firstRow.length) firstRow = Arrays.copyOf(firstRow, distinct * 2);
+                    firstRow[distinct] = i;
+                    idForCode[c] = distinct++;
+                }
+                codes[i] = idForCode[c];
+            }
+        } else {
+            Map<Object, Integer> ids = new HashMap<>();
+            int nullId = -1;
+            for (int i = 0; i < n; i++) {
+                Object v = field.value(i);
+                Integer id = v == null ? (nullId < 0 ? null : nullId) : ids.get(v);
+                if (id == null) {
+                    if (distinct == firstRow.length) firstRow = Arrays.copyOf(firstRow, distinct * 2);
+                    firstRow[distinct] = i;
+                    id = distinct++;
+                    if (v == null) nullId = id;
+                    else ids.put(v, id);
+                }
+                codes[i] = id;
+            }
+        }
+
+        // Sort the distinct values using the field's own row comparison
+        Integer[] order = new Integer[distinct];
+        for (int i = 0; i < distinct; i++) order[i] = i;
+        final int[] rows = firstRow;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return field.compareRows(rows[a], rows[b]);
+            }
+        });
+
+        // Values that compare as equal (even if not identical) share a rank
+        int[] rank = new int[distinct];
+        int current = 0;
+        for (int i = 0; i < distinct; i++) {
+            if (i > 0 && field.compareRows(rows[order[i]], rows[order[i - 1]]) != 0) current++;
+            rank[order[i]] = current;
+        }
+        for (int i = 0; i < n; i++) codes[i] = rank[codes[i]];
+        return distinct == 0 ? 0 : current + 1;
+    }
+
+    /* Combine existing groups with the next codes, using a table of all possible combinations */
+    private static int combineDirect(int[] group, int[] codes, int count, int k) {
+        int[] table = new int[count * k];
+        for (int i = 0; i < group.length; i++) table[group[i] * k + codes[i]] = 1;
+        int used = 0;
+        for (int i = 0; i < table.length; i++)
+            if (table[i] != 0) table[i] = used++;
+        for (int i = 0; i < group.length; i++) group[i] = table[group[i] * k + codes[i]];
+        return used;
+    }
+
+    /* Combine existing groups with the next codes, hashing the combinations that occur and sorting them */
+    private static int combineHashed(int[] group, int[] codes, int k) {
+        LongIntMap map = new LongIntMap();
+        long[] keys = new long[group.length];
+        for (int i = 0; i < group.length; i++) {
+            keys[i] = (long) group[i] * k + codes[i];
+            map.putIfAbsent(keys[i]);
+        }
+        long[] distinct = map.keys();
+        Arrays.sort(distinct);
+        for (int i = 0; i < distinct.length; i++) map.set(distinct[i], i);
+        for (int i = 0; i < group.length; i++) group[i] = map.get(keys[i]);
+        return distinct.length;
+    }
+
+    /* Minimal open-addressing map from long keys to int values */
+    private static final class LongIntMap {
+        private long[] keys = new long[1024];
+        private int[] values = new int[1024];
+        private boolean[] used = new boolean[1024];
+        private int size;
+
+        void putIfAbsent(long key) {
+            int i = find(key);
+            if (used[i]) return;
+            used[i] = true;
+            keys[i] = key;
+            if (++size * 2 > keys.length) rehash();
+        }
+
+        void set(long key, int value) {
+            values[find(key)] = value;
+        }
+
+        int get(long key) {
+            return values[find(key)];
+        }
+
+        long[] keys() {
+            long[] result = new long[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) if (used[i]) result[n++] = keys[i];
+            return result;
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int i = (int) (h ^ (h >>> 32)) & mask;
+            while (used[i] && keys[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (!oldUsed[i]) continue;
+                int j = find(oldKeys[i]);
+                used[j] = true;
+                keys[j] = oldKeys[i];
+            }
+        }
+    }
+}
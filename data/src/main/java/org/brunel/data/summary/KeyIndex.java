@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Field;
+import org.brunel.translator.JSTranslation;
+
+/**
+ * An index from the values of key fields to the rows that have them, so the rows matching a given row can be
+ * found without comparing every row. Rows match when the key fields compare as equal, as for FieldRowComparison.
+ * Building the index takes one pass (or one sort in Javascript); each look-up then only touches the matching rows.
+ */
+public class KeyIndex {
+
+    private final int[] group;                      // The group for each row
+    private final int[] start;                      // Where each group's rows start in 'rows'
+    private final int[] rows;                       // The rows, grouped
+
+    public KeyIndex(Field[] keys, int rowCount) {
+        group = new int[rowCount];
+        int groupCount = keys.length == 0 ? 1 : buildGroups(keys);
+
+        // Place the rows in group order, keeping the original order within each group
+        start = new int[groupCount + 1];
+        for (int i = 0; i < rowCount; i++) start[group[i] + 1]++;
+        for (int g = 0; g < groupCount; g++) start[g + 1] += start[g];
+        int[] next = new int[groupCount];
+        rows = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            int g = group[i];
+            rows[start[g] + next[g]++] = i;
+        }
+    }
+
+    /**
+     * All rows whose keys match the given row, including the row itself
+     *
+     * @param row row to match
+     * @return matching rows, in order
+     */
+    public int[] matchingRows(int row) {
+        int g = group[row];
+        int[] result = new int[start[g + 1] - start[g]];
+        for (int i = 0; i < result.length; i++) result[i] = rows[start[g] + i];
+        return result;
+    }
+
+    private int buildGroups(Field[] keys) {
+        int hashed = hashGroups(keys);
+        if (hashed >= 0) return hashed;
+
+        // Sort the rows, and start a new group wherever they differ
+        FieldRowComparison comparison = new FieldRowComparison(keys, null, false);
+        int[] order = comparison.makeSortedOrder();
+        int currentGroup = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (i > 0 && comparison.compare(order[i], order[i - 1]) != 0) currentGroup++;
+            group[order[i]] = currentGroup;
+        }
+        return currentGroup + 1;
+    }
+
+    /* Hashing the values gives the same groups without sorting every row; the Javascript version always sorts */
+    @JSTranslation(js = "return -1;")
+    private int hashGroups(Field[] keys) {
+        return HashGrouping.build(keys, group);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.summary;
+
+import org.brunel.data.Data;
+import org.brunel.data.util.MapInt;
+import org.brunel.data.util.Range;
+import org.brunel.translator.JSTranslation;
+
+/**
+ * Calculates the statistics for a summary measure one value at a time, so a group's values never need to be
+ * collected into a field. The results are the same as the field statistics would give: numeric statistics use
+ * the values that can be treated as numbers (both ends of a range) while 'valid' and 'unique' use all values.
+ * The mean is calculated from the sum and the variance using Welford's method.
+ * Measures that ask for approximate results use sketches of bounded size (Java only).
+ */
+public class MeasureAccumulator {
+
+    /* Methods that can be calculated exactly, one value at a time */
+    private static boolean isIncremental(String method) {
+        return method.equals("sum") || method.equals("mean") || method.equals("percent")
+                || method.equals("variance") || method.equals("stddev") || method.equals("stderr")
+                || method.equals("min") || method.equals("max") || method.equals("range")
+                || method.equals("valid") || method.equals("unique");
+    }
+
+    /**
+     * Tests whether a measure can be calculated incrementally
+     *
+     * @param m the measure
+     * @return true if an accumulator can calculate it
+     */
+    public static boolean handles(MeasureField m) {
+        return approximates(m) || isIncremental(m.method);
+    }
+
+    /**
+     * Creates the accumulator for a measure
+     *
+     * @param m the measure
+     * @return accumulator, or null if the measure needs all the values at once
+     */
+    public static MeasureAccumulator make(MeasureField m) {
+        if (approximates(m)) return makeApproximate(m);
+        return isIncremental(m.method) ? new MeasureAccumulator(m.method) : null;
+    }
+
+    @JSTranslation(js = "return false;")
+    private static boolean approximates(MeasureField m) {
+        return m.isApproximate() && ApproximateAccumulator.handles(m.method);
+    }
+
+    @JSTranslation(js = "return null;")
+    private static MeasureAccumulator makeApproximate(MeasureField m) {
+        return new ApproximateAccumulator(m.method);
+    }
+
+    private final MapInt distinct;      // Only needed for the count of unique values
+    private int valid;                  // Number of non-null values
+    private int n;                      // Number of numeric values
+    private double sum, mean, m2, min, max;
+
+    /**
+     * Creates the accumulator
+     *
+     * @param method the summary method; unique values are only tracked when it is 'unique'
+     */
+    public MeasureAccumulator(String method) {
+        distinct = "unique".equals(method) ? new MapInt() : null;
+    }
+
+    public void add(Object value) {
+        if (value == null) return;
+        valid++;
+        if (distinct != null) distinct.increment(value);
+        if (value instanceof Range) {
+            addNumeric(Data.asNumeric(((Range) value).low));
+            addNumeric(Data.asNumeric(((Range) value).high));
+        } else {
+            addNumeric(Data.asNumeric(value));
+        }
+    }
+
+    protected void addNumeric(Double value) {
+        if (value == null) return;
+        double v = value;
+        if (n == 0) {
+            min = v;
+            max = v;
+        } else {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        n++;
+        sum += v;
+        double delta = v - mean;
+        mean += delta / n;
+        m2 += delta * (v - mean);
+    }
+
+    /**
+     * Returns a statistic with the same name and value as the field property
+     *
+     * @param key one of mean, stddev, variance, min, max, valid, unique
+     * @return the value (null when there is no numeric data for a numeric statistic)
+     */
+    public Object get(String key) {
+        if (key.equals("valid")) return valid;
+        if (key.equals("unique")) return distinct.size();
+        if (n == 0) return null;
+        if (key.equals("mean")) return sum / n;
+        if (key.equals("min")) return min;
+        if (key.equals("max")) return max;
+        double variance = n > 1 ? m2 / (n - 1) : Double.NaN;
+        if (key.equals("variance")) return variance;
+        if (key.equals("stddev")) return Math.sqrt(variance);
+        return null;
+    }
+}
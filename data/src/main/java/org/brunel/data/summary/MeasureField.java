@@ -66,6 +66,16 @@ public class MeasureField extends DimensionField {
         return method.equals("percent");
     }
 
+    /**
+     * Approximate results are requested with the option 'approx' (e.g. 'median:approx'). Supported measures
+     * are then calculated from fixed-size sketches rather than from all the values in each group.
+     *
+     * @return true if approximate results are acceptable
+     */
+    public boolean isApproximate() {
+        return "approx".equals(option);
+    }
+
     @JSTranslation(ignore = true)
     public String toString() {
         if (field != null && field.name.equals(rename)) return label();
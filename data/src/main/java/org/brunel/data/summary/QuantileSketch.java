@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.summary;
+
+import org.brunel.translator.JSTranslation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * A KLL-style quantile sketch. Values are added to a buffer; when a buffer fills it is sorted and every other
+ * value (from a random start) is promoted to the next level, where each value stands for twice as many.
+ * Memory grows only with the logarithm of the number of values, and ranks are accurate to around 1%.
+ * Until the first buffer fills, results are exact and use the same definitions as NumericStats.
+ */
+@JSTranslation(ignore = true)
+public class QuantileSketch {
+    private static final int CAPACITY = 256;                // Values held at each level; must be even
+
+    private final Random random = new Random(CAPACITY);     // Fixed seed so results are repeatable
+    private double[][] levels = new double[1][CAPACITY];
+    private int[] sizes = new int[1];
+    private long count;
+
+    public void add(double value) {
+        insert(0, value);
+        count++;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Estimates a quantile
+     *
+     * @param p the fraction of the data below the value; 0.25, 0.5 and 0.75 use the Tukey hinge definitions
+     * @return the estimate, or null if there is no data
+     */
+    public Double quantile(double p) {
+        if (count == 0) return null;
+        if (levels.length == 1) return exact(Arrays.copyOf(levels[0], sizes[0]), p);
+
+        // Collect all retained values, weighted by their level, and find the one at the required rank
+        int total = 0;
+        for (int size : sizes) total += size;
+        int[] itemLevel = new int[total];
+        double[] values = new double[total];
+        int n = 0;
+        for (int level = 0; level < levels.length; level++)
+            for (int i = 0; i < sizes[level]; i++) {
+                values[n] = levels[level][i];
+                itemLevel[n++] = level;
+            }
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) order[i] = i;
+        final double[] v = values;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Double.compare(v[a], v[b]);
+            }
+        });
+
+        double target = p * (count - 1);
+        long seen = 0;
+        for (Integer i : order) {
+            seen += 1L << itemLevel[i];
+            if (seen > target) return values[i];
+        }
+        return values[order[total - 1]];
+    }
+
+    private void insert(int level, double value) {
+        if (level == levels.length) {
+            levels = Arrays.copyOf(levels, level + 1);
+            levels[level] = new double[CAPACITY];
+            sizes = Arrays.copyOf(sizes, level + 1);
+        }
+        levels[level][sizes[level]++] = value;
+        if (sizes[level] == CAPACITY) compact(level);
+    }
+
+    private void compact(int level) {
+        double[] data = levels[level];
+        Arrays.sort(data);
+        sizes[level] = 0;
+        for (int i = random.nextBoolean() ? 1 : 0; i < CAPACITY; i += 2) insert(level + 1, data[i]);
+    }
+
+    private static Double exact(double[] data, double p) {
+        Arrays.sort(data);
+        int n = data.length;
+        if (p == 0.5) return av(data, (n - 1) * 0.5);
+        if (p == 0.25) return n % 2 == 0 ? av(data, (n / 2 - 1) * 0.5) : av(data, (n - 1) * 0.25);
+        if (p == 0.75) return n % 2 == 0 ? av(data, n / 2 + (n / 2 - 1) * 0.5) : av(data, (n - 1) / 2 + (n - 1) * 0.25);
+        return av(data, (n - 1) * p);
+    }
+
+    private static double av(double[] v, double index) {
+        return (v[(int) Math.floor(index)] + v[(int) Math.ceil(index)]) / 2.0;
+    }
+}
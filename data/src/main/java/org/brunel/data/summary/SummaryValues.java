@@ -28,7 +28,8 @@ import java.util.List;
 public final class SummaryValues {
     private final Field[] fields;                                   // the fields we use
     private final Field[] xFields;                                  // the fields to use as 'X' values
-    public final List<Integer> rows = new ArrayList<>();     // Which data rows have been aggregated into this
+    public int[] rows;                                              // Which data rows have been aggregated into this
+    public MeasureAccumulator[] accumulators;                       // Incremental statistics for each field (may be null)
     private final ArrayList<Field> groupFields;                     // Fields that group results
     public double[] percentSums;
 
@@ -46,7 +47,7 @@ public final class SummaryValues {
     }
 
     public int firstRow() {
-        return rows.get(0);
+        return rows[0];
     }
 
     /**
@@ -58,9 +59,9 @@ public final class SummaryValues {
      */
     public Object get(int fieldIndex, MeasureField m) {
         String summary = m.method;
-        if (summary.equals("count")) return rows.size();
+        if (summary.equals("count")) return rows.length;
         Field x = xFields.length == 0 ? null : xFields[xFields.length - 1];   // Innermost is the one
-        int index = rows.get(0);
+        int index = rows[0];
 
         if (summary.equals("fit")) {
             Fit fit = m.getFit(groupFields, index);
@@ -78,16 +79,20 @@ public final class SummaryValues {
                 fit = new Smooth(m.field, x, windowPercent, validForGroup(index));
             }
             m.setFit(groupFields, index, fit);
-            return fit.get(x.value(rows.get(0)));
+            return fit.get(x.value(rows[0]));
         }
 
-        Object[] data = new Object[rows.size()];
-        for (int i = 0; i < data.length; i++)
-            data[i] = fields[fieldIndex].value(rows.get(i));
-
-        Field f = Fields.makeColumnField("temp", null, data);
+        // Use the incremental statistics if they were calculated, otherwise build a field for the group's values
+        MeasureAccumulator accumulator = accumulators == null ? null : accumulators[fieldIndex];
+        Field f = null;
+        if (accumulator == null) {
+            Object[] data = new Object[rows.length];
+            for (int i = 0; i < data.length; i++)
+                data[i] = fields[fieldIndex].value(rows[i]);
+            f = Fields.makeColumnField("temp", null, data);
+        }
 
-        Double mean = f.numProperty("mean");
+        Double mean = numeric(f, accumulator, "mean");
         if (summary.equals("percent")) {
             if (mean == null) return null;
             double sum;
@@ -95,15 +100,15 @@ public final class SummaryValues {
                 sum = m.field.valid() * m.field.numProperty("mean");
             else
                 sum = percentSums[fieldIndex];
-            return sum > 0 ? 100 * mean * f.valid() / sum : null;
+            return sum > 0 ? 100 * mean * numeric(f, accumulator, "valid") / sum : null;
         }
 
-        if (summary.equals("range")) return makeRange(m, f, "min", "max");
+        if (summary.equals("range")) return makeRange(m, numeric(f, accumulator, "min"), numeric(f, accumulator, "max"));
 
-        if (summary.equals("iqr")) return makeRange(m, f, "q1", "q3");
+        if (summary.equals("iqr")) return makeRange(m, numeric(f, accumulator, "q1"), numeric(f, accumulator, "q3"));
 
         if (summary.equals("stderr")) {
-         	Double s = f.numProperty("stddev");
+         	Double s = numeric(f, accumulator, "stddev");
          	Double multiplier = 1.0;
          	if (m.option != null) multiplier = Data.parseDouble(m.option);
          	if (s != null && mean != null) return Range.make(mean -s * multiplier, mean +s * multiplier, m.getDateFormat());
@@ -111,7 +116,7 @@ public final class SummaryValues {
 
         if (summary.equals("sum")) {
             if (mean == null) return null;
-            return mean * f.numProperty("valid");
+            return mean * numeric(f, accumulator, "valid");
         }
         if (summary.equals("list")) {
             ItemsList categories = new ItemsList((Object[]) f.property("categories"));
@@ -121,11 +126,15 @@ public final class SummaryValues {
             }
             return categories;
         }
-        return f.property(summary);
+        return accumulator == null ? f.property(summary) : accumulator.get(summary);
+    }
+
+    private Double numeric(Field f, MeasureAccumulator accumulator, String key) {
+        return accumulator == null ? f.numProperty(key) : Data.asNumeric(accumulator.get(key));
     }
 
-    protected Object makeRange(MeasureField m, Field f, String a, String b) {
-        return Range.make(f.numProperty(a), f.numProperty(b), m.getDateFormat());
+    protected Object makeRange(MeasureField m, Double low, Double high) {
+        return Range.make(low, high, m.getDateFormat());
     }
 
     private List<Integer> validForGroup(int index) {
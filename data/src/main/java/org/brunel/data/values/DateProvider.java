@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.values;
+
+import org.brunel.data.Data;
+import org.brunel.translator.JSTranslation;
+
+import java.util.BitSet;
+import java.util.Date;
+
+/**
+ * Stores a column of dates as a primitive array of epoch milliseconds
+ */
+@JSTranslation(ignore = true)
+public class DateProvider extends PrimitiveProvider {
+
+    /**
+     * Creates a date provider when every non-null item is a Date
+     *
+     * @param column data to store
+     * @return the provider, or null if the data cannot be stored this way
+     */
+    public static DateProvider make(Object[] column) {
+        long[] values = new long[column.length];
+        BitSet missing = new BitSet(column.length);
+        for (int i = 0; i < column.length; i++) {
+            Object o = column[i];
+            if (o == null) missing.set(i);
+            else if (o.getClass() == Date.class) values[i] = ((Date) o).getTime();
+            else return null;
+        }
+        return new DateProvider(values, missing);
+    }
+
+    private final long[] column;
+
+    private DateProvider(long[] column, BitSet missing) {
+        super(missing);
+        this.column = column;
+    }
+
+    public int count() {
+        return column.length;
+    }
+
+    public int expectedSize() {
+        return super.expectedSize() + 8 * column.length;
+    }
+
+    public Provider setValue(Object o, int index) {
+        if (o == null) {
+            missing.set(index);
+            return this;
+        } else if (o.getClass() == Date.class) {
+            column[index] = ((Date) o).getTime();
+            missing.clear(index);
+            return this;
+        }
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    public Object value(int index) {
+        return missing.get(index) ? null : new Date(column[index]);
+    }
+
+    double numeric(int index) {
+        return column[index] / Data.MILLIS_PER_DAY;
+    }
+}
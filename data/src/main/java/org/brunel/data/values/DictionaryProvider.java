@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.values;
+
+import org.brunel.data.Data;
+import org.brunel.data.util.MapInt;
+import org.brunel.translator.JSTranslation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores a column of categories as integer codes into a table of the unique values.
+ * The unique values are sorted, so comparing codes gives the same result as comparing the values.
+ * These are only used in Java; the Javascript version always uses a ColumnProvider
+ */
+@JSTranslation(ignore = true)
+public class DictionaryProvider implements Provider {
+
+    /**
+     * Creates a dictionary provider when every non-null item is a String and values are repeated enough
+     * to make the encoding worthwhile
+     *
+     * @param column data to store
+     * @return the provider, or null if the data is not suitable
+     */
+    public static DictionaryProvider make(Object[] column) {
+        Map<Object, Integer> codes = new HashMap<>();
+        for (Object o : column) {
+            if (o == null) continue;
+            if (!(o instanceof String)) return null;
+            if (codes.put(o, 0) == null && codes.size() * 2 > column.length) return null;
+        }
+
+        Object[] dictionary = codes.keySet().toArray(new Object[codes.size()]);
+        Data.sort(dictionary);
+        for (int i = 0; i < dictionary.length; i++) codes.put(dictionary[i], i);
+
+        int[] data = new int[column.length];
+        for (int i = 0; i < column.length; i++)
+            data[i] = column[i] == null ? -1 : codes.get(column[i]);
+        return new DictionaryProvider(data, dictionary, codes);
+    }
+
+    /**
+     * Returns the dictionary for a provider, if it uses dictionary encoding (or is a reordering of one)
+     *
+     * @param provider the provider to read
+     * @return the unique values in code order, or null if not encoded
+     */
+    public static Object[] dictionary(Provider provider) {
+        DictionaryProvider p = base(provider);
+        return p == null ? null : p.dictionary;
+    }
+
+    /**
+     * Returns the code for each row of a provider that uses dictionary encoding (or is a reordering of one)
+     * Missing values have a code of -1
+     *
+     * @param provider the provider to read
+     * @return codes per row, or null if not encoded
+     */
+    public static int[] codes(Provider provider) {
+        if (provider instanceof DictionaryProvider) return ((DictionaryProvider) provider).codes.clone();
+        DictionaryProvider p = base(provider);
+        if (p == null) return null;
+        int[] order = ((ReorderedProvider) provider).order;
+        int[] result = new int[order.length];
+        for (int i = 0; i < result.length; i++) result[i] = p.codes[order[i]];
+        return result;
+    }
+
+    private static DictionaryProvider base(Provider provider) {
+        if (provider instanceof ReorderedProvider) provider = ((ReorderedProvider) provider).base;
+        return provider instanceof DictionaryProvider ? (DictionaryProvider) provider : null;
+    }
+
+    private final int[] codes;                          // -1 for a missing value
+    private final Object[] dictionary;                  // sorted unique values
+    private final Map<Object, Integer> codeForValue;    // inverse of the dictionary
+    private Ranking ranking;                            // codes ranked by the last category order used
+
+    private DictionaryProvider(int[] codes, Object[] dictionary, Map<Object, Integer> codeForValue) {
+        this.codes = codes;
+        this.dictionary = dictionary;
+        this.codeForValue = codeForValue;
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        int p = codes[a], q = codes[b];
+        if (p == q) return 0;
+        if (p < 0) return 1;
+        if (q < 0) return -1;
+        if (categoryOrder.isEmpty()) return p - q;
+        int[] rank = rankFor(categoryOrder);
+        return rank[p] - rank[q];
+    }
+
+    public int count() {
+        return codes.length;
+    }
+
+    public int expectedSize() {
+        int total = 48 + 4 * codes.length + 40 * dictionary.length;
+        for (Object o : dictionary) total += 42 + ((String) o).length() * 2;
+        return total;
+    }
+
+    public Provider setValue(Object o, int index) {
+        Integer code = o == null ? Integer.valueOf(-1) : codeForValue.get(o);
+        if (code == null) return ColumnProvider.copy(this).setValue(o, index);
+        codes[index] = code;
+        return this;
+    }
+
+    public Object value(int index) {
+        int code = codes[index];
+        return code < 0 ? null : dictionary[code];
+    }
+
+    private int[] rankFor(MapInt categoryOrder) {
+        Ranking r = ranking;
+        if (r == null || r.order != categoryOrder) {
+            int[] rank = new int[dictionary.length];
+            for (int i = 0; i < rank.length; i++) rank[i] = categoryOrder.get(dictionary[i]);
+            r = new Ranking(categoryOrder, rank);
+            ranking = r;
+        }
+        return r.rank;
+    }
+
+    /* The category order and the rank it gives each code; immutable so it can be safely shared */
+    private static final class Ranking {
+        private final MapInt order;
+        private final int[] rank;
+
+        private Ranking(MapInt order, int[] rank) {
+            this.order = order;
+            this.rank = rank;
+        }
+    }
+}
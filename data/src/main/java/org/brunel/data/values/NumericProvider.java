@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.values;
+
+import org.brunel.translator.JSTranslation;
+
+import java.util.BitSet;
+
+/**
+ * Stores a column of numbers as a primitive array of doubles
+ */
+@JSTranslation(ignore = true)
+public class NumericProvider extends PrimitiveProvider {
+
+    /**
+     * Creates a numeric provider when every non-null item is a Double
+     *
+     * @param column data to store
+     * @return the provider, or null if the data cannot be stored this way
+     */
+    public static NumericProvider make(Object[] column) {
+        double[] values = new double[column.length];
+        BitSet missing = new BitSet(column.length);
+        for (int i = 0; i < column.length; i++) {
+            Object o = column[i];
+            if (o == null) missing.set(i);
+            else if (o instanceof Double) values[i] = (Double) o;
+            else return null;
+        }
+        return new NumericProvider(values, missing);
+    }
+
+    /**
+     * Creates a numeric provider directly from primitive data
+     *
+     * @param values  the values (ignored where missing)
+     * @param missing set bits mark the missing rows
+     * @return the provider
+     */
+    public static NumericProvider make(double[] values, BitSet missing) {
+        return new NumericProvider(values, missing);
+    }
+
+    private final double[] column;
+
+    private NumericProvider(double[] column, BitSet missing) {
+        super(missing);
+        this.column = column;
+    }
+
+    public int count() {
+        return column.length;
+    }
+
+    public int expectedSize() {
+        return super.expectedSize() + 8 * column.length;
+    }
+
+    public Provider setValue(Object o, int index) {
+        if (o == null) {
+            missing.set(index);
+            return this;
+        } else if (o instanceof Double) {
+            column[index] = (Double) o;
+            missing.clear(index);
+            return this;
+        }
+        return ColumnProvider.copy(this).setValue(o, index);
+    }
+
+    public Object value(int index) {
+        return missing.get(index) ? null : column[index];
+    }
+
+    double numeric(int index) {
+        return column[index];
+    }
+}
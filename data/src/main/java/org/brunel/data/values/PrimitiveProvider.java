@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.values;
+
+import org.brunel.data.util.MapInt;
+import org.brunel.translator.JSTranslation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Base for providers that store their data in primitive arrays, with a bitmap marking the missing rows.
+ * These are only used in Java; the Javascript version always uses a ColumnProvider
+ */
+@JSTranslation(ignore = true)
+public abstract class PrimitiveProvider implements Provider {
+
+    /**
+     * Returns the valid values of a provider as numbers, if they can be read without creating objects.
+     * Handles primitive providers and reorderings of them
+     *
+     * @param provider the provider to read
+     * @return array of the non-null values, or null if the provider does not store primitives
+     */
+    public static double[] validNumericValues(Provider provider) {
+        if (provider instanceof PrimitiveProvider) {
+            PrimitiveProvider p = (PrimitiveProvider) provider;
+            double[] result = new double[p.count() - p.missing.cardinality()];
+            int n = 0;
+            for (int i = 0; i < p.count(); i++)
+                if (!p.missing.get(i)) result[n++] = p.numeric(i);
+            return result;
+        }
+        if (provider instanceof ReorderedProvider && ((ReorderedProvider) provider).base instanceof PrimitiveProvider) {
+            ReorderedProvider r = (ReorderedProvider) provider;
+            PrimitiveProvider p = (PrimitiveProvider) r.base;
+            double[] values = new double[r.order.length];
+            int n = 0;
+            for (int index : r.order)
+                if (!p.missing.get(index)) values[n++] = p.numeric(index);
+            return n == values.length ? values : Arrays.copyOf(values, n);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the numbers of a provider for every row, if they are stored as numbers in primitive form.
+     * Handles numeric providers and reorderings of them
+     *
+     * @param provider the provider to read
+     * @param values   filled with the value for each row
+     * @param missing  set true for each missing row
+     * @return true if the provider stores numbers and they were read
+     */
+    public static boolean readNumbers(Provider provider, double[] values, boolean[] missing) {
+        if (provider instanceof NumericProvider) {
+            NumericProvider p = (NumericProvider) provider;
+            for (int i = 0; i < values.length; i++) {
+                missing[i] = p.missing.get(i);
+                values[i] = p.numeric(i);
+            }
+            return true;
+        }
+        if (provider instanceof ReorderedProvider && ((ReorderedProvider) provider).base instanceof NumericProvider) {
+            ReorderedProvider r = (ReorderedProvider) provider;
+            NumericProvider p = (NumericProvider) r.base;
+            for (int i = 0; i < values.length; i++) {
+                int index = r.order[i];
+                missing[i] = p.missing.get(index);
+                values[i] = p.numeric(index);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    final BitSet missing;                           // set bits are null values
+
+    PrimitiveProvider(BitSet missing) {
+        this.missing = missing;
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        boolean p = missing.get(a), q = missing.get(b);
+        if (p || q) return p == q ? 0 : (p ? 1 : -1);         // nulls sort to the end
+        if (categoryOrder.isEmpty())
+            return Double.compare(numeric(a), numeric(b));
+        else
+            return categoryOrder.get(value(a)) - categoryOrder.get(value(b));
+    }
+
+    public int expectedSize() {
+        return 48 + count() / 8;
+    }
+
+    /**
+     * The stored value as a number, using the same conversion as Data.asNumeric
+     *
+     * @param index row to access (must not be missing)
+     * @return numeric value
+     */
+    abstract double numeric(int index);
+}
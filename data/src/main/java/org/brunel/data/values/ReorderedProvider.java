@@ -20,8 +20,8 @@ import org.brunel.data.util.MapInt;
 
 public class ReorderedProvider implements Provider {
 
-    private final Provider base;
-    private final int[] order;
+    final Provider base;
+    final int[] order;
 
     public ReorderedProvider(Provider base, int[] order) {
         if (base instanceof ReorderedProvider) {
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.values;
+
+import org.brunel.data.Data;
+import org.brunel.data.Field;
+import org.brunel.data.util.MapInt;
+
+/**
+ * Stores the selection state of rows as bits, thirty-two rows to a word.
+ * The values are Field.VAL_SELECTED and Field.VAL_UNSELECTED; changing the selection of a row changes
+ * just its bit, so the cost of a selection change depends on the number of rows it affects.
+ */
+public class SelectionProvider implements Provider {
+
+    /**
+     * Creates a selection provider with the same values as an existing provider
+     *
+     * @param base provider of selection values
+     * @return provider with the rows that had the selected value set
+     */
+    public static SelectionProvider make(Provider base) {
+        SelectionProvider result = new SelectionProvider(base.count());
+        for (int i = 0; i < result.n; i++)
+            if (Field.VAL_SELECTED.equals(base.value(i))) result.set(i, true);
+        return result;
+    }
+
+    private final int n;
+    private final int[] bits;                       // Set bits are selected rows
+    private final int[] marks;                      // Used to detect repeated rows when toggling
+
+    private SelectionProvider(int n) {
+        this.n = n;
+        this.bits = new int[(n + 31) >> 5];
+        this.marks = new int[bits.length];
+    }
+
+    public boolean isSelected(int index) {
+        return (bits[index >> 5] & (1 << (index & 31))) != 0;
+    }
+
+    public void set(int index, boolean selected) {
+        if (selected) bits[index >> 5] |= 1 << (index & 31);
+        else bits[index >> 5] &= ~(1 << (index & 31));
+    }
+
+    /**
+     * Sets the selection for a set of rows
+     *
+     * @param rows     rows to change (repeats are allowed)
+     * @param selected true to select them, false to de-select
+     */
+    public void setAll(int[] rows, boolean selected) {
+        for (int row : rows) set(row, selected);
+    }
+
+    /**
+     * Toggles the selection for a set of rows. A row listed more than once is only toggled once
+     *
+     * @param rows rows to change
+     */
+    public void toggle(int[] rows) {
+        for (int row : rows) {
+            int w = row >> 5, bit = 1 << (row & 31);
+            if ((marks[w] & bit) != 0) continue;
+            marks[w] |= bit;
+            bits[w] ^= bit;
+        }
+        for (int row : rows) marks[row >> 5] = 0;
+    }
+
+    /**
+     * De-selects all rows
+     */
+    public void clear() {
+        for (int i = 0; i < bits.length; i++) bits[i] = 0;
+    }
+
+    public int compareRows(int a, int b, MapInt categoryOrder) {
+        Object p = value(a);
+        Object q = value(b);
+        if (p == q) return 0;
+        if (categoryOrder.isEmpty())
+            return Data.compare(p, q);
+        else
+            return categoryOrder.get(p) - categoryOrder.get(q);
+    }
+
+    public int count() {
+        return n;
+    }
+
+    public int expectedSize() {
+        return 32 + 8 * bits.length;
+    }
+
+    public Provider setValue(Object o, int index) {
+        if (Field.VAL_SELECTED.equals(o)) set(index, true);
+        else if (Field.VAL_UNSELECTED.equals(o)) set(index, false);
+        else return ColumnProvider.copy(this).setValue(o, index);
+        return this;
+    }
+
+    public Object value(int index) {
+        return isSelected(index) ? Field.VAL_SELECTED : Field.VAL_UNSELECTED;
+    }
+}
@@ -58,6 +58,23 @@ public class TestData {
     assertEquals(null, Data.asNumeric("abc -1 ddd"));
   }
 
+  @Test
+  public void testTypedColumnsMatchRows() {
+    String[] names = new String[]{"a", "b", "c"};
+    String[] options = new String[]{"string", "numeric", "date-YearMonthDay"};
+    Object[][] rows = new Object[][]{{"x", 1, "2001-02-03"}, {null, 2.5, null}, {"y", null, "2001-02-05"}};
+    Object[][] columns = new Object[][]{{"x", null, "y"}, {1, 2.5, null}, {"2001-02-03", null, "2001-02-05"}};
+    Dataset byRow = Dataset.makeTyped(names, options, rows);
+    Dataset byColumn = Dataset.makeTypedColumns(names, options, columns);
+    assertEquals(byRow.fields.length, byColumn.fields.length);
+    for (int k = 0; k < names.length; k++) {
+      Field f = byRow.field(names[k]), g = byColumn.field(names[k]);
+      assertEquals(f.isNumeric(), g.isNumeric());
+      assertEquals(f.isDate(), g.isDate());
+      for (int i = 0; i < 3; i++) assertEquals(f.value(i), g.value(i));
+    }
+  }
+
   @Test
   public void testDateConversion() {
     Field f = Fields.makeColumnField("a", "label", new Object[]{"Jan 4, 1980", "Jan 4, 1988", "a", "2", null, "Jan 9, 1978"});
@@ -59,5 +59,83 @@ public class TestExpandSelection {
 
     }
 
+    @Test
+    public void testModifiers() {
+        Dataset a = Summarize.transform(data, "jobcat=jobcat; count=:count");
+        Dataset b = Summarize.transform(data, "gender=gender; count=:count");
+        Field select = data.field("#selection");
+
+        // Clerical, then add Manager
+        data.modifySelection("sel", 0, a, new String[]{"jobcat"});
+        String clerical = CannedData.dumpField(select);
+        data.modifySelection("add", 1, a, new String[]{"jobcat"});
+        for (int i = 0; i < data.rowCount(); i++)
+            assertEquals(expected(data, i, "jobcat", "Clerical", "Manager"), select.value(i));
+
+        // Remove Manager again
+        data.modifySelection("sub", 1, a, new String[]{"jobcat"});
+        assertEquals(clerical, CannedData.dumpField(select));
+
+        // Toggling female rows flips only those rows, and toggling again restores the selection
+        data.modifySelection("tog", 0, b, new String[]{"gender"});
+        for (int i = 0; i < data.rowCount(); i++) {
+            boolean flipped = data.field("gender").value(i).equals("Female");
+            boolean was = clerical.split(",")[i].equals("Y");
+            assertEquals(flipped != was ? Field.VAL_SELECTED : Field.VAL_UNSELECTED, select.value(i));
+        }
+        data.modifySelection("tog", 0, b, new String[]{"gender"});
+        assertEquals(clerical, CannedData.dumpField(select));
+    }
+
+    @Test
+    public void testOnRawData() {
+        Dataset copy = Dataset.make(CSV.read(CannedData.bank));
+        Field select = copy.field("#selection");
+        String[] keys = {"gender", "minority"};
+
+        // Selecting on the data itself expands through its own rows
+        copy.modifySelection("sel", 0, copy, keys);
+        for (int i = 0; i < copy.rowCount(); i++) {
+            boolean same = copy.field("gender").value(i).equals(copy.field("gender").value(0))
+                    && copy.field("minority").value(i).equals(copy.field("minority").value(0));
+            assertEquals(same ? Field.VAL_SELECTED : Field.VAL_UNSELECTED, select.value(i));
+        }
+
+        // No row clears the selection
+        copy.modifySelection("sel", null, copy, keys);
+        for (int i = 0; i < copy.rowCount(); i++) assertEquals(Field.VAL_UNSELECTED, select.value(i));
+    }
+
+    @Test
+    public void testManyRows() {
+        int n = 5000;
+        String[] lines = new String[n + 1];
+        lines[0] = "a,b";
+        for (int i = 0; i < n; i++) lines[i + 1] = "k" + (i * 7 % 13) + "," + (i % 5);
+        Dataset big = Dataset.make(CSV.read(Data.join(lines, "\n")));
+        Dataset summary = Summarize.transform(big, "a=a; b=b; count=:count");
+        String[] keys = {"a", "b"};
+        Field select = big.field("#selection");
+
+        // Each summary row selects exactly the rows with its keys
+        for (int r = 0; r < summary.rowCount(); r += 7) {
+            big.modifySelection("sel", r, summary, keys);
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                boolean match = big.field("a").value(i).equals(summary.field("a").value(r))
+                        && big.field("b").value(i).equals(summary.field("b").value(r));
+                assertEquals(match ? Field.VAL_SELECTED : Field.VAL_UNSELECTED, select.value(i));
+                if (match) count++;
+            }
+            assertEquals(((Number) summary.field("#count").value(r)).intValue(), count);
+        }
+    }
+
+    private static String expected(Dataset d, int row, String field, String... values) {
+        Object v = d.field(field).value(row);
+        for (String s : values) if (s.equals(v)) return Field.VAL_SELECTED;
+        return Field.VAL_UNSELECTED;
+    }
+
 
 }
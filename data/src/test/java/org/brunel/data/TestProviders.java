@@ -16,9 +16,16 @@
 
 package org.brunel.data;
 
+import org.brunel.data.values.DateProvider;
+import org.brunel.data.values.DictionaryProvider;
+import org.brunel.data.values.NumericProvider;
+import org.brunel.translator.JSTranslation;
 import org.junit.Test;
 
+import java.util.Date;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TestProviders {
 
@@ -68,4 +75,100 @@ public class TestProviders {
         assertEquals("1, 2, 3, 4", Data.join(a.categories(), null, true));
     }
 
+    @Test
+    @JSTranslation(ignore = true)
+    public void testPrimitiveNumeric() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{3.0, null, 1.0, 2.0, null, 4.0});
+        assertTrue(a.provider instanceof NumericProvider);
+        assertEquals(6, a.rowCount());
+        assertEquals(null, a.value(1));
+        assertEquals(2.0, a.value(3));
+        assertEquals(4, a.numProperty("validNumeric"), 0.001);
+        assertEquals(2.5, a.numProperty("mean"), 0.001);
+        assertEquals(1.0, a.min(), 0.001);
+        assertEquals(4.0, a.max(), 0.001);
+
+        // Nulls sort last
+        assertTrue(a.compareRows(2, 0) < 0);
+        assertTrue(a.compareRows(1, 0) > 0);
+        assertEquals(0, a.compareRows(1, 4));
+
+        // Permuted data uses the primitive values too
+        Field p = Fields.permute(a, new int[]{0, 0, 1, 5}, false);
+        assertEquals(3, p.numProperty("validNumeric"), 0.001);
+        assertEquals(10 / 3.0, p.numProperty("mean"), 0.001);
+
+        // Setting a non-numeric value converts the storage
+        a.setValue(5.0, 1);
+        assertEquals(5.0, a.value(1));
+        a.setValue("x", 2);
+        assertEquals("x", a.value(2));
+        assertEquals(5.0, a.value(1));
+    }
+
+    @Test
+    @JSTranslation(ignore = true)
+    public void testPrimitiveDates() {
+        Date d1 = new Date(86400000L * 10), d2 = new Date(86400000L * 20);
+        Field a = Fields.makeColumnField("a", "b", new Object[]{d2, null, d1});
+        assertTrue(a.provider instanceof DateProvider);
+        assertEquals(d2, a.value(0));
+        assertEquals(null, a.value(1));
+        assertTrue(a.compareRows(2, 0) < 0);
+        a.setNumeric();
+        a.set("date", true);
+        assertEquals(10.0, a.min(), 0.001);
+        assertEquals(20.0, a.max(), 0.001);
+    }
+
+    @Test
+    public void testMixedColumn() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{3.0, "x", 1.0});
+        assertEquals("x", a.value(1));
+        assertEquals(3.0, a.value(0));
+        assertEquals(2, a.numProperty("validNumeric"), 0.001);
+    }
+
+    @Test
+    @JSTranslation(ignore = true)
+    public void testDictionary() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{"c", "a", null, "b", "a", "c", "a"});
+        assertTrue(a.provider instanceof DictionaryProvider);
+        assertEquals("c", a.value(0));
+        assertEquals(null, a.value(2));
+        assertEquals("a, b, c", Data.join(a.dictionary()));
+        assertEquals("2, 0, -1, 1, 0, 2, 0", Data.join(a.dictionaryCodes()));
+        assertEquals("a, b, c", Data.join(a.categories()));
+        assertEquals(6, a.valid());
+
+        // Natural order, nulls last
+        assertTrue(a.compareRows(1, 0) < 0);
+        assertTrue(a.compareRows(2, 0) > 0);
+        assertEquals(0, a.compareRows(1, 4));
+
+        // Defined category order is respected
+        Field b = Fields.makeColumnField("a", "b", new Object[]{"c", "a", null, "b", "a", "c", "a"});
+        b.setCategories(new Object[]{"c", "b", "a"});
+        assertTrue(b.compareRows(1, 0) > 0);
+        assertTrue(b.compareRows(3, 0) > 0);
+
+        // Reordering keeps the codes available
+        Field p = Fields.permute(a, new int[]{3, 2, 0}, false);
+        assertEquals("1, -1, 2", Data.join(p.dictionaryCodes()));
+
+        // Setting values outside the dictionary converts the storage
+        a.setValue("b", 0);
+        assertEquals("b", a.value(0));
+        a.setValue("z", 1);
+        assertEquals("z", a.value(1));
+        assertEquals("b", a.value(0));
+    }
+
+    @Test
+    public void testUniqueStrings() {
+        Field a = Fields.makeColumnField("a", "b", new Object[]{"x", "y", "z"});
+        assertEquals("y", a.value(1));
+        assertEquals(3, a.numProperty("unique"), 0.001);
+    }
+
 }
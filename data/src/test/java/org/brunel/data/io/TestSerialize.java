@@ -24,6 +24,8 @@ import org.brunel.data.Fields;
 import org.brunel.translator.JSTranslation;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
@@ -142,6 +144,81 @@ public class TestSerialize {
     assertEquals(Serialize.VERSION, bytes[0]);
   }
 
+  @JSTranslation(ignore = true)
+  @Test
+  public void testStreamRoundTrip() throws Exception {
+    String[] sources = {CannedData.whiskey, CannedData.bank, "a,b\n,", "a,b\n,\n\u00e9,1.23456789e-213\n\u2026,NaN"};
+    for (String source : sources) {
+      Dataset dataset = Dataset.make(CSV.read(source));
+      for (boolean compress : new boolean[]{false, true}) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingSerialize.write(dataset, out, compress);
+        byte[] bytes = out.toByteArray();
+        assertEquals(Serialize.VERSION, bytes[0]);
+        assertEquals(StreamingSerialize.FORMAT_VERSION, bytes[1]);
+        assertSameData(dataset, StreamingSerialize.read(new ByteArrayInputStream(bytes)));
+      }
+    }
+  }
+
+  @JSTranslation(ignore = true)
+  @Test
+  public void testStreamDates() throws Exception {
+    Date date1 = new Date();
+    Date date2 = new Date(date1.getTime() + 86400000 * 12);
+    Object[] unique = new Object[100];
+    for (int i = 0; i < unique.length; i++) unique[i] = i == 50 ? null : new Date(date1.getTime() + i * 3600000L);
+    Field a = Data.toDate(Fields.makeColumnField("a", "b", new Object[]{date1, null, date2, date1}));
+    Field b = Data.toDate(Fields.makeColumnField("c", "d", unique));
+    Dataset dataset = Dataset.make(new Field[]{a, b});
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamingSerialize.write(dataset, out, false);
+    Dataset copy = StreamingSerialize.read(new ByteArrayInputStream(out.toByteArray()));
+    assertSameData(dataset, copy);
+    assertEquals(12, copy.field("a").max() - copy.field("a").min(), 1e-6);
+    assertTrue(copy.field("c").isDate());
+  }
+
+  @JSTranslation(ignore = true)
+  @Test
+  public void testStreamIsSmaller() throws Exception {
+    // Mostly unique numbers are written directly, and repeated values with a few bits each
+    StringBuilder csv = new StringBuilder("id,value,group\n");
+    for (int i = 0; i < 5000; i++) csv.append(i).append(',').append(Math.sqrt(i)).append(',').append("g" + i % 5).append('\n');
+    Dataset dataset = Dataset.make(CSV.read(csv.toString()));
+    byte[] original = Serialize.serializeDataset(dataset);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamingSerialize.write(dataset, out, false);
+    assertTrue(out.size() < original.length * 0.6);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    StreamingSerialize.write(dataset, compressed, true);
+    assertTrue(compressed.size() < out.size());
+    assertSameData(dataset, StreamingSerialize.read(new ByteArrayInputStream(compressed.toByteArray())));
+  }
+
+  @JSTranslation(ignore = true)
+  @Test
+  public void testStreamReadsOriginalFormat() throws Exception {
+    Dataset dataset = Dataset.make(CSV.read(CannedData.bank));
+    byte[] bytes = Serialize.serializeDataset(dataset);
+    assertSameData(dataset, StreamingSerialize.read(new ByteArrayInputStream(bytes)));
+  }
+
+  @JSTranslation(ignore = true)
+  private void assertSameData(Dataset expected, Dataset actual) {
+    assertEquals(expected.rowCount(), actual.rowCount());
+    for (Field f : expected.removeSpecialFields().fields) {
+      Field g = actual.field(f.name);
+      assertEquals(f.label, g.label);
+      assertEquals(f.isNumeric(), g.isNumeric());
+      assertEquals(f.isDate(), g.isDate());
+      for (int i = 0; i < f.rowCount(); i++)
+        assertEquals(f.name + "[" + i + "]", 0, Data.compare(f.value(i), g.value(i)));
+    }
+  }
+
   @Test
   public void testEncodingsByte() {
     byte[] bytes;
@@ -21,9 +21,17 @@ import org.brunel.data.Data;
 import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.io.CSV;
+import org.brunel.data.io.StreamingCSV;
+import org.brunel.translator.JSTranslation;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class TestCSV {
 
@@ -211,4 +219,90 @@ public class TestCSV {
 		assertEquals("d", data[2][2]);
 	}
 
+	@Test
+	@JSTranslation(ignore = true)
+	public void testStreamingMatchesCSV() throws IOException {
+		assertStreamingMatches(SIMPLE);
+		assertStreamingMatches(SIMPLE_TABS);
+		assertStreamingMatches(NASTY);
+		assertStreamingMatches(CannedData.bank);
+		assertStreamingMatches("A,B\n 1,1\n , \n 3,     \n");
+		assertStreamingMatches("A,B,C\n1.50,x,+3\n007,y,1e3\n-0,z,.5\nq,w,-2.25\n\nignored,after,blank");
+		assertStreamingMatches("A,B\n1.50,2\n0.10,3\n-12.000,4\nsome,5\nmore,6\ntext,7");
+		assertStreamingMatches("A,B\n\"12\",\"\"\n 13 ,\"x\"");
+	}
+
+	@Test
+	@JSTranslation(ignore = true)
+	public void testStreamingTypesNumbers() throws IOException {
+		Field[] fields = StreamingCSV.read(new StringReader("a,b\n1.5,x\n,y\n2,x"));
+		assertEquals(true, fields[0].isNumeric());
+		assertEquals(1.5, fields[0].value(0));
+		assertEquals(null, fields[0].value(1));
+		assertEquals(false, fields[1].isNumeric());
+		assertEquals("x", fields[1].value(2));
+	}
+
+	@Test
+	@JSTranslation(ignore = true)
+	public void testStreamingAcrossChunks() throws IOException {
+		// Put an escaped quote and a CR-LF pair across the 64K buffer boundary
+		StringBuilder b = new StringBuilder("a,b\n\"");
+		while (b.length() < 65535) b.append('x');
+		b.append("\"\"y\",1\n3,");
+		while (b.length() < 65536 * 2 - 1) b.append('z');
+		b.append("\r\n2,3\n");
+		String text = b.toString();
+		assertStreamingMatches(text);
+		Field[] fields = StreamingCSV.read(new StringReader(text));
+		assertEquals(3, fields[0].rowCount());
+		assertEquals(true, ((String) fields[0].value(0)).endsWith("x\"y"));
+	}
+
+	@Test
+	@JSTranslation(ignore = true)
+	public void testParallelMatchesSequential() throws IOException {
+		int threshold = StreamingCSV.getParallelThreshold();
+		try {
+			// Small chunks, so quoted line breaks and CR-LF pairs fall across chunk boundaries
+			StreamingCSV.setParallelThreshold(40);
+			assertStreamingMatches(NASTY);
+			assertStreamingMatches(CannedData.bank);
+			assertStreamingMatches("A,B,C\r\n1.50,x,+3\r\n007,\"y\ny\",1e3\r\n-0,z,.5\r\nq,w,-2.25\n\nignored,after,blank");
+			StringBuilder b = new StringBuilder("id,name,value\n");
+			for (int i = 0; i < 2000; i++)
+				b.append(i).append(",\"n\"\"").append(i % 7).append("\n\",").append(i % 3 == 0 ? "" : i * 0.25).append('\n');
+			b.append("last,\"x\",1");
+			assertStreamingMatches(b.toString());
+		} finally {
+			StreamingCSV.setParallelThreshold(threshold);
+		}
+	}
+
+	@Test
+	@JSTranslation(ignore = true)
+	public void testParallelReportsBadLine() throws IOException {
+		int threshold = StreamingCSV.getParallelThreshold();
+		StringBuilder b = new StringBuilder("a,b\n");
+		for (int i = 0; i < 500; i++) b.append(i).append(",\"x\ny\"\n");
+		b.append("1,2,3\n");
+		try {
+			StreamingCSV.setParallelThreshold(100);
+			StreamingCSV.read(new StringReader(b.toString()));
+			fail("Expected bad line to be reported");
+		} catch (IllegalArgumentException e) {
+			assertEquals("Line 502 had 3 entries; expected 2", e.getMessage());
+		} finally {
+			StreamingCSV.setParallelThreshold(threshold);
+		}
+	}
+
+	@JSTranslation(ignore = true)
+	private void assertStreamingMatches(String text) throws IOException {
+		String expected = CannedData.dumpData(Dataset.make(CSV.read(text)));
+		assertEquals(expected, CannedData.dumpData(Dataset.make(StreamingCSV.read(new StringReader(text)))));
+		ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+		assertEquals(expected, CannedData.dumpData(Dataset.make(StreamingCSV.read(bytes))));
+	}
+
 }
@@ -126,6 +126,48 @@ public class TestFilter {
 
         a = simple.filter("B is y || missing");
         assertEquals("A|B|C|D|#count|#row -- c|y|1|2|1|3 -- c|?|2|1|1|4", CannedData.dumpData(a));
+
+        // A missing value kept by one clause keeps the row, whatever later clauses say
+        a = simple.filter("B is y || missing; D in 2,4");
+        assertEquals("A|B|C|D|#count|#row -- c|y|1|2|1|3 -- c|?|2|1|1|4", CannedData.dumpData(a));
+    }
+
+    @Test
+    public void testFilterManyRows() {
+        // 200 rows so the rows span several words; x is missing for every 7th row, y cycles through a,b,c
+        String[] lines = new String[201];
+        lines[0] = "x,y";
+        for (int i = 0; i < 200; i++)
+            lines[i + 1] = (i % 7 == 3 ? "" : "" + i) + "," + "abc".charAt(i % 3);
+        Dataset data = Dataset.make(CSV.read(Data.join(lines, "\n")));
+
+        Dataset a = data.filter("x in 10,150");
+        assertEquals(141 - 21, a.rowCount());
+        assertEquals(11.0, a.field("x").value(0));
+        assertEquals(149.0, a.field("x").value(a.rowCount() - 1));
+
+        a = data.filter("x !in 10,150");
+        assertEquals(59 - 8, a.rowCount());
+
+        a = data.filter("x is 3,4,64,65,199");
+        assertEquals("4, 64, 65", Data.join(a.field("x").categories()));
+
+        a = data.filter("y is a; x in 60,70");
+        assertEquals("60, 63, 69", Data.join(a.field("x").categories()));
+
+        a = data.filter("x in 60,70 || missing; y is a");
+        assertEquals(3 + 29, a.rowCount());
+        assertEquals(null, a.field("x").value(a.rowCount() - 1));
+
+        a = data.filter("x ranked 1,10");
+        assertEquals(10, a.rowCount());
+        assertEquals(188.0, a.field("x").value(0));
+
+        a = data.filter("x ranked 5,6");
+        assertEquals("193, 194", Data.join(a.field("x").categories()));
+
+        a = data.filter("y ranked 1,1");
+        assertEquals("c", Data.join(a.field("y").categories()));
     }
 
 }
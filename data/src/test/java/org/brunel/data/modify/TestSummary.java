@@ -21,8 +21,18 @@ import org.brunel.data.Dataset;
 import org.brunel.data.Field;
 import org.brunel.data.Fields;
 import org.brunel.data.io.CSV;
+import org.brunel.data.summary.DistinctSketch;
+import org.brunel.data.summary.FieldRowComparison;
+import org.brunel.data.summary.HashGrouping;
+import org.brunel.data.summary.MeasureAccumulator;
+import org.brunel.data.summary.QuantileSketch;
+import org.brunel.data.util.Range;
+import org.brunel.translator.JSTranslation;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import static junit.framework.TestCase.assertEquals;
 
 public class TestSummary {
@@ -152,4 +162,116 @@ public class TestSummary {
         assertEquals("Jan 1 1932, Feb 2 1932", b.fields[1].valueFormatted(0));
     }
 
+    @Test
+    @JSTranslation(ignore = true)
+    public void testAccumulatorsMatchFieldStatistics() {
+        assertAccumulatorMatches(new Object[]{1.0, 4.0, null, 2.5, 4.0, -3.0});
+        assertAccumulatorMatches(new Object[]{"a", "b", null, "a"});
+        assertAccumulatorMatches(new Object[]{"1", "x", 3.0, null});
+        assertAccumulatorMatches(new Object[]{7.0});
+        assertAccumulatorMatches(new Object[]{Range.make(1.0, 3.0), Range.make(2.0, 10.0), 4.0});
+        assertAccumulatorMatches(new Object[]{null, null});
+    }
+
+    @JSTranslation(ignore = true)
+    private void assertAccumulatorMatches(Object[] data) {
+        Field f = Fields.makeColumnField("f", "F", data);
+        String[] keys = new String[]{"mean", "min", "max", "valid", "unique", "variance", "stddev"};
+        for (String key : keys) {
+            MeasureAccumulator accumulator = new MeasureAccumulator(key);
+            for (Object o : data) accumulator.add(o);
+            Object expected = f.property(key);
+            Object actual = accumulator.get(key);
+            if (expected instanceof Double && !((Double) expected).isNaN())
+                assertEquals(key, (Double) expected, (Double) actual, 1e-9);
+            else
+                assertEquals(key, expected, actual);
+        }
+    }
+
+    @Test
+    @JSTranslation(ignore = true)
+    public void testApproximateMatchesExactForSmallGroups() {
+        String exact = "gender=gender; a=salary:median; b=salary:q1; c=salary:q3; d=educ:unique; e=salary:iqr";
+        String approx = "gender=gender; a=salary:median:approx; b=salary:q1:approx; c=salary:q3:approx; "
+                + "d=educ:unique:approx; e=salary:iqr:approx";
+        assertEquals(CannedData.dumpData(Summarize.transform(data, exact)),
+                CannedData.dumpData(Summarize.transform(data, approx)));
+    }
+
+    @Test
+    @JSTranslation(ignore = true)
+    public void testApproximateSketches() {
+        int n = 200000;
+        Random random = new Random(3);
+        QuantileSketch quantiles = new QuantileSketch();
+        DistinctSketch distinct = new DistinctSketch();
+        for (int i = 0; i < n; i++) {
+            int v = random.nextInt(n);
+            quantiles.add(v);
+            distinct.add("item" + i % 50000);
+        }
+        // Ranks within 2%, distinct count within 5%
+        assertEquals(n * 0.5, quantiles.quantile(0.5), n * 0.02);
+        assertEquals(n * 0.25, quantiles.quantile(0.25), n * 0.02);
+        assertEquals(n * 0.75, quantiles.quantile(0.75), n * 0.02);
+        assertEquals(50000, distinct.estimate(), 2500);
+    }
+
+    @Test
+    @JSTranslation(ignore = true)
+    public void testHashGroupingMatchesSorting() {
+        Random random = new Random(7);
+        int n = 5000;
+        Object[] a = new Object[n], b = new Object[n], c = new Object[n], d = new Object[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = random.nextInt(10) == 0 ? null : "cat" + random.nextInt(5);
+            b[i] = random.nextInt(10) == 0 ? null : (double) random.nextInt(20);
+            c[i] = random.nextDouble();
+            d[i] = i % 3 == 0 ? null : (double) (i % 4000);
+        }
+        Dataset data = Dataset.make(new Field[]{
+                Fields.makeColumnField("a", "A", a), Fields.makeColumnField("b", "B", b),
+                Fields.makeColumnField("c", "C", c), Fields.makeColumnField("d", "D", d)});
+
+        // Small combinations use a direct table; unique values in both fields need hashing
+        assertSameGroups(data.field("a"), data.field("b"));
+        assertSameGroups(data.field("b"), data.field("a"), data.field("#selection"));
+        assertSameGroups(data.field("c"), data.field("d"));
+        assertSameGroups(data.field("d"), data.field("a"), data.field("c"));
+    }
+
+    @Test
+    @JSTranslation(ignore = true)
+    public void testHashGroupingSmallData() {
+        // Few rows with many distinct combinations are hashed rather than given a large table
+        Object[] a = new Object[12], b = new Object[12], c = new Object[12];
+        for (int i = 0; i < 12; i++) {
+            a[i] = "v" + i;
+            b[i] = (double) (11 - i);
+            c[i] = i % 2 == 0 ? null : (double) i;
+        }
+        Dataset data = Dataset.make(new Field[]{
+                Fields.makeColumnField("a", "A", a), Fields.makeColumnField("b", "B", b),
+                Fields.makeColumnField("c", "C", c)});
+        assertSameGroups(data.field("a"), data.field("b"));
+        assertSameGroups(data.field("c"), data.field("a"), data.field("b"));
+    }
+
+    @JSTranslation(ignore = true)
+    private void assertSameGroups(Field... fields) {
+        int n = fields[0].rowCount();
+        FieldRowComparison comparison = new FieldRowComparison(fields, null, false);
+        int[] order = comparison.makeSortedOrder();
+        int[] expected = new int[n];
+        int current = 0;
+        for (int i = 1; i < n; i++) {
+            if (comparison.compare(order[i], order[i - 1]) != 0) current++;
+            expected[order[i]] = current;
+        }
+        int[] group = new int[n];
+        assertEquals(current + 1, HashGrouping.build(fields, group));
+        assertEquals(true, Arrays.equals(expected, group));
+    }
+
 }
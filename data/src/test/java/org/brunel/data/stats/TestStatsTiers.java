@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 IBM Corporation and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.brunel.data.stats;
+
+import org.brunel.data.Field;
+import org.brunel.data.Fields;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestStatsTiers {
+
+	@Test
+	public void testExtentDoesNotSort() {
+		Field f = Fields.makeColumnField("a", "label", new Object[]{7.0, 3.0, null, 12.0, 5.0, 3.0});
+		int moments = StatsTiers.runs(StatsTiers.MOMENTS);
+		int quantiles = StatsTiers.runs(StatsTiers.QUANTILES);
+		int spacing = StatsTiers.runs(StatsTiers.SPACING);
+		int nominal = StatsTiers.runs(StatsTiers.NOMINAL);
+
+		assertEquals(3.0, f.min(), 1e-9);
+		assertEquals(12.0, f.max(), 1e-9);
+		assertEquals(6.0, f.numProperty("mean"), 1e-9);
+		assertEquals(moments + 1, StatsTiers.runs(StatsTiers.MOMENTS));
+		assertEquals(quantiles, StatsTiers.runs(StatsTiers.QUANTILES));
+		assertEquals(spacing, StatsTiers.runs(StatsTiers.SPACING));
+		assertEquals(nominal, StatsTiers.runs(StatsTiers.NOMINAL));
+
+		assertEquals(5.0, f.numProperty("median"), 1e-9);
+		assertEquals(3.0, f.numProperty("q1"), 1e-9);
+		assertEquals(7.0, f.numProperty("q3"), 1e-9);
+		assertEquals(quantiles + 1, StatsTiers.runs(StatsTiers.QUANTILES));
+		assertEquals(spacing, StatsTiers.runs(StatsTiers.SPACING));
+
+		assertEquals(1.0, f.numProperty("granularity"), 1e-9);
+		assertEquals(2.0, f.numProperty("minDelta"), 1e-9);
+		assertEquals(spacing + 1, StatsTiers.runs(StatsTiers.SPACING));
+		assertEquals(moments + 1, StatsTiers.runs(StatsTiers.MOMENTS));
+		assertEquals(nominal, StatsTiers.runs(StatsTiers.NOMINAL));
+	}
+
+	@Test
+	public void testQuantilesBySelection() {
+		// Even counts include the median in both halves; odd counts do not
+		Field f = Fields.makeColumnField("a", "label", new Object[]{8.0, 1.0, 6.0, 3.0, 2.0, 7.0, 4.0, 5.0});
+		assertEquals(4.5, f.numProperty("median"), 1e-9);
+		assertEquals(2.5, f.numProperty("q1"), 1e-9);
+		assertEquals(6.5, f.numProperty("q3"), 1e-9);
+
+		f = Fields.makeColumnField("a", "label", new Object[]{9.0, 1.0, 6.0, 3.0, 2.0, 7.0, 4.0, 5.0, 8.0});
+		assertEquals(5.0, f.numProperty("median"), 1e-9);
+		assertEquals(3.0, f.numProperty("q1"), 1e-9);
+		assertEquals(7.0, f.numProperty("q3"), 1e-9);
+
+		f = Fields.makeColumnField("a", "label", new Object[]{4.0});
+		assertEquals(4.0, f.numProperty("median"), 1e-9);
+		assertEquals(4.0, f.numProperty("q1"), 1e-9);
+		assertEquals(4.0, f.numProperty("q3"), 1e-9);
+	}
+
+	@Test
+	public void testDecimalPlacesWithoutSorting() {
+		// Only the minimum may be fractional for the data to count as integers
+		Field f = Fields.makeColumnField("a", "label", new Object[]{10.0, 2.5, 30.0, 20.0});
+		assertEquals(0.0, f.numProperty("decimalPlaces"), 1e-9);
+		f = Fields.makeColumnField("a", "label", new Object[]{10.0, 2.5, 30.5, 20.0});
+		assertEquals(3.0, f.numProperty("decimalPlaces"), 1e-9);
+	}
+}
@@ -40,8 +40,15 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Sample JAX-RS web application that produces Brunel visualizations.  Currently only d3 output is supported.
@@ -158,6 +165,43 @@ public class BrunelService extends Application {
 
 	}
 
+	/**
+	 * Generates only the d3 Javascript for a visualization, streamed to the client as it is built so that
+	 * large data tables are never held in memory as a single String.
+	 *
+	 * @param brunelSrc  the Brunel syntax defining the visualization
+	 * @param width      the desired width of the resulting visualization
+	 * @param height     the desired height of the resulting visualization
+	 * @param visId      an identifier to use for the d3 JS to reference the HTML tag containing the visualization
+	 * @param controlsId an identifier to use for HTML tag that will contain the interactive controls
+	 * @param dataUrl    (optional) a URL or cache identifier for the data; a data() function in the Brunel is used otherwise
+	 * @param prefix     (optional) The prefix used to uniquely identify data for a given user session when adding data to the cache.
+	 * @return the Javascript
+	 */
+	@GET
+	@Path("d3/js")
+	@Produces("application/javascript")
+	public Response createAsD3Script(@QueryParam("brunel_src") final String brunelSrc,
+									 @QueryParam("width") final int width,
+									 @QueryParam("height") final int height,
+									 @QueryParam("visid") final String visId,
+									 @QueryParam("controlsid") final String controlsId,
+									 @QueryParam("data") String dataUrl,
+									 @QueryParam("data_prefix") String prefix
+	) {
+		// Read the data before streaming starts, so failures can still be reported as errors
+		final String src = prefix != null ? D3Integration.prefixAllDataStatements(brunelSrc, prefix) : brunelSrc;
+		final Dataset data = dataUrl == null ? null : readBrunelData(dataUrl, false);
+		StreamingOutput stream = new StreamingOutput() {
+			public void write(OutputStream output) throws IOException {
+				Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+				D3Integration.writeD3(data, src, width, height, visId, controlsId, writer);
+				writer.flush();
+			}
+		};
+		return Response.ok(stream).header("Access-Control-Allow-Origin", "*").build();
+	}
+
 	/**
 	 * Service that creates new Brunel syntax to use a given visualization with new data.
 	 *
@@ -213,7 +257,7 @@ public class BrunelService extends Application {
 	/**
 	 * Caches CSV data which is then used by Brunel data() statements.
 	 *
-	 * @param csv     the CSV to cache
+	 * @param csv     the CSV to cache, parsed as it is streamed in
 	 * @param dataKey the name of the dataset as it will be referred to within the data() statement
 	 * @param prefix  (optional) a prefix to allow the name of the dataset to be unique for a given user session
 	 * @return the response
@@ -221,7 +265,7 @@ public class BrunelService extends Application {
 	@POST
 	@Path("cache")
 	@Consumes(MediaType.TEXT_PLAIN)
-	public Response cacheData(String csv, @QueryParam("data_key") String dataKey, @QueryParam("prefix") String prefix) {
+	public Response cacheData(InputStream csv, @QueryParam("data_key") String dataKey, @QueryParam("prefix") String prefix) {
 
 		String key = prefix != null ? prefix + dataKey : dataKey;
 		try {
@@ -142,4 +142,35 @@ public class BestMatchTest {
 
 	}
 
+	@Test
+	public void testManyFields() {
+		// Enough fields that they are scored in parallel
+		StringBuilder csv = new StringBuilder();
+		for (int c = 0; c < 200; c++) csv.append(c > 0 ? "," : "").append("column").append(c);
+		csv.append('\n');
+		for (int i = 0; i < 50; i++) {
+			for (int c = 0; c < 200; c++) csv.append(c > 0 ? "," : "").append(c % 3 == 0 ? "v" + (i * c) % 5 : "" + (i * c) % 17 * 0.5);
+			csv.append('\n');
+		}
+		Dataset wide = Dataset.make(CSV.read(csv.toString()));
+
+		Action a = Action.parse("x(gender) y(salary) bar mean(educ) color(jobcat) size(salbegin) + x(#row) y(minority)");
+		Action b = BestMatch.match(data, wide, a);
+		Param[] parms1 = ActionUtil.parameters(a);
+		Param[] parms2 = ActionUtil.parameters(b);
+		assertEquals(parms1.length, parms2.length);
+
+		ArrayList<String> fields = new ArrayList<>();
+		for (int i = 0; i < parms1.length; i++) {
+			if (parms1[i].asField().startsWith("#")) {
+				assertEquals(parms1[i], parms2[i]);
+			} else {
+				String f = parms2[i].asField();
+				assertFalse(fields.contains(f));
+				fields.add(f);
+				assertEquals(data.field(parms1[i].asField()).preferCategorical(), wide.field(f).preferCategorical());
+			}
+		}
+	}
+
 }